@@ -0,0 +1,14 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieReviewCount {
+
+    private Long movieInfoId;
+    private long count;
+}
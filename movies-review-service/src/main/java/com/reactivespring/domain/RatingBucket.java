@@ -0,0 +1,16 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RatingBucket {
+
+    private Long movieInfoId;
+    // whole rating, 8 counts the ratings from 8.0 up to 9.0 excluded
+    private Long rating;
+    private long count;
+}
@@ -1,26 +1,51 @@
 package com.reactivespring.domain;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import java.time.Duration;
+import java.time.Instant;
 
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 @Document
+// serves the reviews of a movie ordered by rating, a top-N stops after N index entries instead of sorting them all
+@CompoundIndex(name = "movieInfoId_rating", def = "{'movieInfoId': 1, 'rating': -1}", background = true)
+// serves the pages of a movie's reviews, ?after= seeks within the movie and the page comes out in _id order without a sort
+@CompoundIndex(name = "movieInfoId_reviewId", def = "{'movieInfoId': 1, '_id': 1}", background = true)
 public class Review {
 
+    // a write that died between its review and its stats leaves its mark behind, past this the mark is ignored
+    public static final Duration STATS_PENDING_TIMEOUT = Duration.ofSeconds(30);
+
     @Id
+    // stored as an ObjectId, a string id would sort before all of them and fall out of the reviewId pages
+    @Pattern(regexp = "[0-9a-fA-F]{24}", message = "rating.reviewId : must be left out or a 24 character hex id")
     private String reviewId;
+    @Indexed(name = "movieInfoId", background = true)
     @NotNull(message = "rating.movieInfoId : must not be null")
     private Long movieInfoId;
     private String comment;
     @Min(value = 0L, message = "rating.negative : please pass a non-negative value")
     private Double rating;
+    // set by the write of the review until the review stats follow it, a stats rebuild doesn't count a review
+    // whose $inc is still on its way
+    @JsonIgnore
+    private Instant statsPendingAt;
+
+    public Review(String reviewId, Long movieInfoId, String comment, Double rating) {
+        this.reviewId = reviewId;
+        this.movieInfoId = movieInfoId;
+        this.comment = comment;
+        this.rating = rating;
+    }
 }
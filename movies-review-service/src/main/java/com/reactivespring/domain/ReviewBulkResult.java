@@ -0,0 +1,19 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewBulkResult {
+
+    private long inserted;
+    private long rejected;
+    // "line : message" of the first rejected reviews only, a bad import can't grow it without bound
+    private List<String> errors = new ArrayList<>();
+}
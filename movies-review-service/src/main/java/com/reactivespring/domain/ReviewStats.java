@@ -0,0 +1,47 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rating summary of the reviews of a movie, kept up to date with $inc as reviews are added, updated and deleted.
+ * Reviews without a rating are not counted. It follows the reviews eventually rather than atomically : a summary
+ * that failed to follow a review write is rebuilt from the reviews of the movie.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class ReviewStats {
+
+    @Id
+    private Long movieInfoId;
+    private long count;
+    private double sum;
+    private Double min;
+    private Double max;
+    // rated reviews per whole rating, "8" counts the ratings from 8.0 up to 9.0 excluded
+    private Map<String, Long> histogram = new HashMap<>();
+    // moved by every write, a write computed from what it read only lands on the revision it read
+    @JsonIgnore
+    private long revision;
+
+    public ReviewStats(Long movieInfoId) {
+        this.movieInfoId = movieInfoId;
+    }
+
+    public Double getAverage() {
+        return count == 0 ? null : sum / count;
+    }
+
+    public static String bucket(Double rating) {
+        return String.valueOf((long) Math.floor(rating));
+    }
+}
@@ -0,0 +1,14 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewStatsRebuildResult {
+
+    // movies with reviews or stats, the ones left without a rated review have their stats removed
+    private long movies;
+}
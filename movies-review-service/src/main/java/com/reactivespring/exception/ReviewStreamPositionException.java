@@ -0,0 +1,11 @@
+package com.reactivespring.exception;
+
+public class ReviewStreamPositionException extends RuntimeException{
+
+    private String message;
+
+    public ReviewStreamPositionException(String message) {
+        super(message);
+        this.message = message;
+    }
+}
@@ -2,6 +2,7 @@ package com.reactivespring.exceptionhandler;
 
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
+import com.reactivespring.exception.ReviewStreamPositionException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.web.reactive.error.ErrorWebExceptionHandler;
 import org.springframework.context.annotation.Configuration;
@@ -30,6 +31,11 @@ public class GlobalErrorHandler implements ErrorWebExceptionHandler {
             return exchange.getResponse().writeWith(Mono.just(errorMessage));
         }
 
+        if(ex instanceof ReviewStreamPositionException){
+            exchange.getResponse().setStatusCode(HttpStatus.GONE);
+            return exchange.getResponse().writeWith(Mono.just(errorMessage));
+        }
+
         exchange.getResponse().setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR);
         return exchange.getResponse().writeWith(Mono.just(errorMessage));
     }
@@ -1,40 +1,85 @@
 package com.reactivespring.handler;
 
+import com.reactivespring.domain.MovieRating;
+import com.reactivespring.domain.MovieReviewCount;
+import com.reactivespring.domain.RatingBucket;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBulkResult;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.domain.ReviewStatsRebuildResult;
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewStatsReactiveRepository;
+import com.reactivespring.stream.ReviewEvent;
+import com.reactivespring.stream.ReviewEventType;
+import com.reactivespring.stream.ReviewFeed;
+import com.reactivespring.stream.ReviewStreamPublisher;
 import com.reactivespring.validator.ReviewValidator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.codec.CodecException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.Errors;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class ReviewsHandler {
     private ReviewReactiveRepository reviewReactiveRepository;
+    private ReviewStatsReactiveRepository reviewStatsReactiveRepository;
     //private ReviewValidator reviewValidator;
 
-    Sinks.Many<Review> reviewsSink = Sinks.many().replay().latest();
+    private ReviewStreamPublisher reviewStreamPublisher;
+    private ReviewFeed reviewFeed;
+
+    private int defaultLimit;
+    private int maxLimit;
+
+    @Value("${reviews.bulk.batchSize:500}")
+    private int bulkBatchSize;
+
+    @Value("${reviews.bulk.maxErrors:100}")
+    private int bulkMaxErrors;
 
     @Autowired
     private Validator validator;
 
-    public ReviewsHandler(ReviewReactiveRepository reviewReactiveRepository) {
+    public ReviewsHandler(ReviewReactiveRepository reviewReactiveRepository, ReviewStatsReactiveRepository reviewStatsReactiveRepository,
+                          ReviewStreamPublisher reviewStreamPublisher, ReviewFeed reviewFeed,
+                          @Value("${reviews.page.defaultLimit:100}") int defaultLimit,
+                          @Value("${reviews.page.maxLimit:1000}") int maxLimit) {
         this.reviewReactiveRepository = reviewReactiveRepository;
+        this.reviewStatsReactiveRepository = reviewStatsReactiveRepository;
+        this.reviewStreamPublisher = reviewStreamPublisher;
+        this.reviewFeed = reviewFeed;
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
     }
 
  /*    public ReviewsHandler(ReviewReactiveRepository reviewReactiveRepository, ReviewValidator reviewValidator) {
@@ -45,36 +90,323 @@ public class ReviewsHandler {
 
     static Mono<ServerResponse> notFound = ServerResponse.notFound().build();
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    static final int DEFAULT_TOP_RATED_LIMIT = 10;
+
+    // the fields a ?fields= projection can select, in the order they are written
+    static final Map<String, Function<Review, Object>> REVIEW_FIELD_VALUES = new LinkedHashMap<>();
+
+    static {
+        REVIEW_FIELD_VALUES.put("reviewId", Review::getReviewId);
+        REVIEW_FIELD_VALUES.put("movieInfoId", Review::getMovieInfoId);
+        REVIEW_FIELD_VALUES.put("comment", Review::getComment);
+        REVIEW_FIELD_VALUES.put("rating", Review::getRating);
+    }
+
+    static final List<String> REVIEW_FIELDS = List.copyOf(REVIEW_FIELD_VALUES.keySet());
+
+    static final ParameterizedTypeReference<Map<String, Object>> SELECTED_FIELDS_TYPE = new ParameterizedTypeReference<>() {
+    };
+
 
     public Mono<ServerResponse> getReviews(ServerRequest serverRequest) {
-        var movieInfoId = serverRequest.queryParam("movieInfoId");
+        var ndjson = serverRequest.headers().accept().contains(MediaType.APPLICATION_NDJSON);
+        var fields = serverRequest.queryParam("fields")
+                .map(this::parseFields)
+                .orElse(List.of());
+        var after = serverRequest.queryParam("after")
+                .orElse(null);
+        var movieInfoIds = serverRequest.queryParam("movieInfoIds")
+                .map(this::parseMovieInfoIds);
+        if (movieInfoIds.isPresent()) {
+            // paged like the reviews of one movie, a long list of popular movies doesn't come back as one response
+            if (ndjson) {
+                var reviews = serverRequest.queryParam("limit")
+                        .map(this::parseLimit)
+                        .map(limit -> reviewReactiveRepository.findReviewsByMovieInfoIds(movieInfoIds.get(), after, limit, fields))
+                        .orElseGet(() -> reviewReactiveRepository.findReviewsByMovieInfoIdsAfter(movieInfoIds.get(), after, fields));
+                return buildReviewsStream(reviews, fields);
+            }
+            var limit = serverRequest.queryParam("limit")
+                    .map(this::parseLimit)
+                    .orElse(defaultLimit);
+            var reviews = reviewReactiveRepository.findReviewsByMovieInfoIds(movieInfoIds.get(), after, limit + 1, fields);
+            return buildReviewsPage(reviews, limit, fields);
+        }
+        var movieInfoId = serverRequest.queryParam("movieInfoId")
+                .map(this::parseMovieInfoId);
+        if (ndjson) {
+            // no page to hold, reviews are written as the cursor yields them and an interrupted read resumes with ?after=
+            var reviews = serverRequest.queryParam("limit")
+                    .map(this::parseLimit)
+                    .map(limit -> reviewReactiveRepository.findReviewsPage(movieInfoId.orElse(null), after, limit, fields))
+                    .orElseGet(() -> reviewReactiveRepository.findReviewsAfter(movieInfoId.orElse(null), after, fields));
+            return buildReviewsStream(reviews, fields);
+        }
+        var limit = serverRequest.queryParam("limit")
+                .map(this::parseLimit)
+                .orElse(defaultLimit);
+        // one extra review tells whether there is a next page without a count query
+        var reviews = reviewReactiveRepository.findReviewsPage(movieInfoId.orElse(null), after, limit + 1, fields);
+        return buildReviewsPage(reviews, limit, fields);
+    }
+
+    public Mono<ServerResponse> getReviewStats(ServerRequest serverRequest) {
+        var movieInfoId = serverRequest.queryParam("movieInfoId")
+                .map(this::parseMovieInfoId)
+                .orElseThrow(() -> new ReviewDataException("movieInfoId : must be a number"));
+        // a movie without rated reviews has no stats document yet
+        return reviewStatsReactiveRepository.findById(movieInfoId)
+                .defaultIfEmpty(new ReviewStats(movieInfoId))
+                .flatMap(reviewStats -> ServerResponse.ok().bodyValue(reviewStats));
+    }
+
+    public Mono<ServerResponse> rebuildReviewStats(ServerRequest serverRequest) {
+        var movieInfoId = serverRequest.queryParam("movieInfoId")
+                .map(this::parseMovieInfoId);
         if (movieInfoId.isPresent()) {
-            var reviews = reviewReactiveRepository.findReviewsByMovieInfoId(Long.valueOf(movieInfoId.get()));
-            return buildReviewsResponse(reviews);
-        } else {
-            var reviews = reviewReactiveRepository.findAll();
-            return buildReviewsResponse(reviews);
+            return reviewStatsReactiveRepository.rebuild(movieInfoId.get())
+                    .defaultIfEmpty(new ReviewStats(movieInfoId.get()))
+                    .flatMap(reviewStats -> ServerResponse.ok().bodyValue(reviewStats));
         }
+        return reviewStatsReactiveRepository.rebuildAll()
+                .doOnNext(movies -> log.info("Review stats rebuilt for {} movies", movies))
+                .flatMap(movies -> ServerResponse.ok().bodyValue(new ReviewStatsRebuildResult(movies)));
+    }
+
+    public Mono<ServerResponse> getTopRatedMovies(ServerRequest serverRequest) {
+        var limit = serverRequest.queryParam("limit")
+                .map(this::parseLimit)
+                .orElse(DEFAULT_TOP_RATED_LIMIT);
+        var minReviews = serverRequest.queryParam("minReviews")
+                .map(this::parseMinReviews)
+                .orElse(1L);
+        return ServerResponse.ok()
+                .body(reviewReactiveRepository.findTopRatedMovies(limit, minReviews), MovieRating.class);
     }
 
-    private Mono<ServerResponse> buildReviewsResponse(Flux<Review> reviews) {
+    public Mono<ServerResponse> getRatingDistribution(ServerRequest serverRequest) {
+        var movieInfoId = serverRequest.queryParam("movieInfoId")
+                .map(this::parseMovieInfoId);
         return ServerResponse.ok()
-                .body(reviews, Review.class);
+                .body(reviewReactiveRepository.findRatingDistribution(movieInfoId.orElse(null)), RatingBucket.class);
+    }
+
+    public Mono<ServerResponse> getReviewCounts(ServerRequest serverRequest) {
+        return ServerResponse.ok()
+                .body(reviewReactiveRepository.countReviewsByMovie(), MovieReviewCount.class);
+    }
+
+    private long parseMinReviews(String minReviews) {
+        try {
+            var count = Long.parseLong(minReviews.trim());
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ReviewDataException("minReviews : must be a non-negative number");
+    }
+
+    private int parseLimit(String limit) {
+        try {
+            var pageSize = Integer.parseInt(limit.trim());
+            if (pageSize >= 1 && pageSize <= maxLimit) {
+                return pageSize;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ReviewDataException("limit : must be a number between 1 and " + maxLimit);
+    }
+
+    private List<Long> parseMovieInfoIds(String movieInfoIds) {
+        try {
+            return Arrays.stream(movieInfoIds.split(","))
+                    .map(String::trim)
+                    .filter(movieInfoId -> !movieInfoId.isEmpty())
+                    .map(Long::valueOf)
+                    .distinct()
+                    .collect(Collectors.toList());
+        } catch (NumberFormatException e) {
+            throw new ReviewDataException("movieInfoIds : must be a comma separated list of numbers");
+        }
+    }
+
+    private List<String> parseFields(String fields) {
+        var reviewFields = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+        if (!REVIEW_FIELDS.containsAll(reviewFields)) {
+            throw new ReviewDataException("fields : must be a comma separated list of " + String.join(", ", REVIEW_FIELDS));
+        }
+        return reviewFields;
+    }
+
+    private Long parseMovieInfoId(String movieInfoId) {
+        try {
+            return Long.valueOf(movieInfoId.trim());
+        } catch (NumberFormatException e) {
+            throw new ReviewDataException("movieInfoId : must be a number");
+        }
+    }
+
+    private Mono<ServerResponse> buildReviewsStream(Flux<Review> reviews, List<String> fields) {
+        return writeReviews(ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON), reviews, fields);
+    }
+
+    private Mono<ServerResponse> writeReviews(ServerResponse.BodyBuilder response, Flux<Review> reviews, List<String> fields) {
+        if (fields.isEmpty()) {
+            return response.body(reviews, Review.class);
+        }
+        return response.body(reviews.map(review -> selectFields(review, fields)), SELECTED_FIELDS_TYPE);
+    }
+
+    // a projected review is written with the fields asked for only, a review in full with every field, null or not
+    private Map<String, Object> selectFields(Review review, List<String> fields) {
+        var selected = new LinkedHashMap<String, Object>();
+        REVIEW_FIELD_VALUES.forEach((field, value) -> {
+            if ("reviewId".equals(field) || fields.contains(field)) {
+                selected.put(field, value.apply(review));
+            }
+        });
+        return selected;
+    }
+
+    private Mono<ServerResponse> buildReviewsPage(Flux<Review> reviews, int limit, List<String> fields) {
+        return reviews.collectList()
+                .flatMap(page -> {
+                    var response = ServerResponse.ok();
+                    if (page.size() > limit) {
+                        page = page.subList(0, limit);
+                        // the client sends it back as ?after= to read the next page
+                        response.header(NEXT_CURSOR_HEADER, page.get(limit - 1).getReviewId());
+                    }
+                    return response.bodyValue(fields.isEmpty() ? page : page.stream()
+                            .map(review -> selectFields(review, fields))
+                            .collect(Collectors.toList()));
+                });
     }
 
     public Mono<ServerResponse> addReview(ServerRequest serverRequest) {
 
         return serverRequest.bodyToMono(Review.class)
                 .doOnNext(this::validate)
+                .doOnNext(review -> review.setStatsPendingAt(Instant.now()))
                 .flatMap(review -> reviewReactiveRepository.save(review))
-                .doOnNext(review -> {
-                    reviewsSink.tryEmitNext(review);
-                })
+                .flatMap(savedReview -> updateStats(List.of(savedReview.getMovieInfoId()), reviewStatsReactiveRepository.addRatings(List.of(savedReview)),
+                        clearStatsPending(List.of(savedReview)))
+                        .thenReturn(savedReview))
+                .flatMap(savedReview -> appendToFeed(ReviewEventType.ADDED, savedReview))
                 .flatMap(savedReview ->
                         ServerResponse.status(HttpStatus.CREATED)
                                 .bodyValue(savedReview));
     }
 
+    public Mono<ServerResponse> addReviewsBulk(ServerRequest serverRequest) {
+
+        var bulkResult = Mono.defer(() -> {
+            var result = new ReviewBulkResult();
+            var lines = new AtomicLong();
+            // decoded line by line, the body is read no faster than the batches are inserted
+            return serverRequest.bodyToFlux(Review.class)
+                    // the decoder fails on the first malformed line, everything inserted so far stays
+                    .onErrorMap(ex -> ex instanceof ServerWebInputException || ex instanceof CodecException, ex -> new ReviewDataException("line " + (lines.get() + 1)
+                            + " : malformed review, " + result.getInserted() + " reviews inserted before it"))
+                    .filter(review -> {
+                        var line = lines.incrementAndGet();
+                        var constraintViolations = validator.validate(review);
+                        if (constraintViolations.isEmpty()) {
+                            return true;
+                        }
+                        result.setRejected(result.getRejected() + 1);
+                        if (result.getErrors().size() < bulkMaxErrors) {
+                            result.getErrors().add(line + " : " + errorMessage(constraintViolations));
+                        }
+                        return false;
+                    })
+                    .buffer(bulkBatchSize)
+                    // one insertMany per batch, the next batch is only requested once it is written
+                    .concatMap(batch -> reviewReactiveRepository.insert(pendingStats(batch))
+                            .collectList()
+                            .flatMap(inserted -> updateStats(movieInfoIds(inserted), reviewStatsReactiveRepository.addRatings(inserted), clearStatsPending(inserted))
+                                    .then(invalidateMovies(movieInfoIds(inserted)))
+                                    .thenReturn((long) inserted.size())), 1)
+                    .doOnNext(inserted -> result.setInserted(result.getInserted() + inserted))
+                    .then(Mono.fromSupplier(() -> result));
+        });
+        // a backfill is history, its reviews are not replayed to the live review stream : one INVALIDATED event per movie
+        // and batch is, so the movies-service cache reloads those movies instead of serving their lists from before it
+        return bulkResult
+                .doOnNext(result -> log.info("Bulk reviews inserted : {}, rejected : {}", result.getInserted(), result.getRejected()))
+                .flatMap(result -> ServerResponse.ok().bodyValue(result));
+    }
+
+    // the reviews are stored by then : stats that failed to follow them are rebuilt from the reviews of their movies,
+    // and left to the next rebuild when even that fails. Their statsPendingAt mark is taken off first, a rebuild waits
+    // for a marked review
+    private Mono<Void> updateStats(Collection<Long> movieInfoIds, Mono<Void> statsUpdate, Mono<Void> statsPendingCleared) {
+        return statsUpdate
+                .thenReturn(true)
+                .onErrorResume(ex -> {
+                    log.warn("Review stats of movies {} not updated, rebuilding them : {}", movieInfoIds, ex.getMessage());
+                    return Mono.just(false);
+                })
+                .flatMap(updated -> statsPendingCleared.then(updated ? Mono.empty() : Flux.fromIterable(movieInfoIds)
+                        .concatMap(movieInfoId -> reviewStatsReactiveRepository.rebuild(movieInfoId)
+                                .onErrorResume(rebuildEx -> {
+                                    log.warn("Review stats of movie {} left to the next rebuild : {}", movieInfoId, rebuildEx.getMessage());
+                                    return Mono.empty();
+                                }))
+                        .then()));
+    }
+
+    // marked in the same write that stores them, a rebuild never counts one of them before its $inc has landed
+    private List<Review> pendingStats(List<Review> reviews) {
+        var statsPendingAt = Instant.now();
+        reviews.forEach(review -> review.setStatsPendingAt(statsPendingAt));
+        return reviews;
+    }
+
+    // a mark left behind only holds a rebuild back until it times out
+    private Mono<Void> clearStatsPending(List<Review> reviews) {
+        var reviewIds = reviews.stream()
+                .map(Review::getReviewId)
+                .collect(Collectors.toList());
+        return reviewReactiveRepository.clearStatsPending(reviewIds, reviews.get(0).getStatsPendingAt())
+                .onErrorResume(ex -> {
+                    log.warn("Reviews {} left marked as pending stats : {}", reviewIds, ex.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private Set<Long> movieInfoIds(List<Review> reviews) {
+        return reviews.stream()
+                .map(Review::getMovieInfoId)
+                .collect(Collectors.toSet());
+    }
+
+    private Mono<Void> invalidateMovies(Set<Long> movieInfoIds) {
+        return Flux.fromIterable(movieInfoIds)
+                .concatMap(movieInfoId -> appendToFeed(ReviewEventType.INVALIDATED, new Review(null, movieInfoId, null, null)))
+                .then();
+    }
+
+    // the review is stored by then, a client told otherwise would retry and store it twice : a failed append only
+    // costs the stream this review
+    private Mono<Review> appendToFeed(ReviewEventType type, Review review) {
+        return reviewFeed.append(type, review)
+                .onErrorResume(ex -> {
+                    log.warn("Review {} of movie {} stored but not streamed as {} : {}", review.getReviewId(), review.getMovieInfoId(), type, ex.getMessage());
+                    return Mono.just(review);
+                });
+    }
+
     private void validate(Review review) {
         Errors errors = new BeanPropertyBindingResult(review, "review");
        /* reviewValidator.validate(review, errors);
@@ -91,33 +423,41 @@ public class ReviewsHandler {
         var constraintViolations = validator.validate(review);
         log.info("constraintViolations : {} ", constraintViolations);
         if (constraintViolations.size() > 0) {
-            var errorMessage = constraintViolations.stream()
-                    .map(ConstraintViolation::getMessage)
-                    .sorted()
-                    .collect(Collectors.joining(", "));
+            var errorMessage = errorMessage(constraintViolations);
             log.info("errorMessage : {} ", errorMessage);
             throw new ReviewDataException(errorMessage);
         }
     }
 
+    private String errorMessage(Set<ConstraintViolation<Review>> constraintViolations) {
+        return constraintViolations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
     public Mono<ServerResponse> updateReview(ServerRequest serverRequest) {
 
         var reviewId = serverRequest.pathVariable("id");
 
-        var existingReview = reviewReactiveRepository.findById(reviewId);
-        //.switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not Found for the given Review Id")));
-
-        return existingReview
-                .flatMap(review -> serverRequest.bodyToMono(Review.class)
-                        .map(reqReview -> {
-                            review.setComment(reqReview.getComment());
-                            review.setRating(reqReview.getRating());
-                            return review;
-                        })
-                        .flatMap(reviewReactiveRepository::save)
-                        .flatMap(savedReview ->
-                                ServerResponse.status(HttpStatus.OK)
-                                        .bodyValue(savedReview)))
+        // a single find-and-modify, empty when there is no review with that id
+        return serverRequest.bodyToMono(Review.class)
+                .flatMap(reqReview -> {
+                    var statsPendingAt = Instant.now();
+                    return reviewReactiveRepository.updateReview(reviewId, reqReview.getComment(), reqReview.getRating(), statsPendingAt)
+                            .flatMap(previousReview -> {
+                                var updatedReview = new Review(reviewId, previousReview.getMovieInfoId(), reqReview.getComment(), reqReview.getRating());
+                                updatedReview.setStatsPendingAt(statsPendingAt);
+                                return updateStats(List.of(previousReview.getMovieInfoId()), reviewStatsReactiveRepository
+                                        .replaceRating(previousReview.getMovieInfoId(), previousReview.getRating(), reqReview.getRating()), clearStatsPending(List.of(updatedReview)))
+                                        .thenReturn(updatedReview);
+                            });
+                })
+                // stream subscribers, the movies service cache among them, drop what they hold for the movie
+                .flatMap(savedReview -> appendToFeed(ReviewEventType.UPDATED, savedReview))
+                .flatMap(savedReview ->
+                        ServerResponse.status(HttpStatus.OK)
+                                .bodyValue(savedReview))
                 .switchIfEmpty(notFound);
 
 
@@ -125,16 +465,49 @@ public class ReviewsHandler {
 
     public Mono<ServerResponse> deleteReview(ServerRequest serverRequest) {
         var reviewId = serverRequest.pathVariable("id");
-        return reviewReactiveRepository.findById(reviewId)
-                .flatMap(review -> reviewReactiveRepository.deleteById(reviewId))
+        // marked before its stats move and removed after, a rebuild never misses a review whose $inc is still to come
+        return reviewReactiveRepository.markReview(reviewId, Instant.now())
+                .flatMap(markedReview -> updateStats(List.of(markedReview.getMovieInfoId()),
+                        reviewStatsReactiveRepository.replaceRating(markedReview.getMovieInfoId(), markedReview.getRating(), null),
+                        reviewReactiveRepository.removeReview(reviewId).then())
+                        .thenReturn(markedReview))
+                .flatMap(removedReview -> appendToFeed(ReviewEventType.DELETED, removedReview))
+                .switchIfEmpty(Mono.fromRunnable(() -> log.info("No review to delete for the given Review Id : {}", reviewId)))
                 .then(ServerResponse.noContent().build());
 
     }
 
     public Mono<ServerResponse> getReviewsStream(ServerRequest serverRequest) {
+        var movieInfoId = serverRequest.queryParam("movieInfoId")
+                .map(this::parseMovieInfoId);
+        // the id of the last event read, ?fromSeq= for NDJSON clients, Last-Event-ID sent back by EventSource clients on reconnect
+        var fromId = serverRequest.queryParam("fromSeq")
+                .or(() -> Optional.ofNullable(serverRequest.headers().firstHeader("Last-Event-ID")))
+                .map(String::trim);
+
+        Flux<ReviewEvent> reviewEvents;
+        if (fromId.isPresent()) {
+            reviewEvents = reviewStreamPublisher.resume(movieInfoId.orElse(null), fromId.get());
+        } else {
+            reviewEvents = movieInfoId
+                    .map(reviewStreamPublisher::subscribe)
+                    .orElseGet(reviewStreamPublisher::subscribe);
+        }
+
+        if (serverRequest.headers().accept().contains(MediaType.TEXT_EVENT_STREAM)) {
+            var serverSentEvents = reviewEvents
+                    .map(reviewEvent -> ServerSentEvent.builder(reviewEvent.getReview())
+                            .id(reviewEvent.getId())
+                            // added reviews stay unnamed messages, EventSource clients listen for the others by name
+                            .event(reviewEvent.getType() == ReviewEventType.ADDED ? null : reviewEvent.getType().name().toLowerCase())
+                            .build());
+            return ServerResponse.ok()
+                    .contentType(MediaType.TEXT_EVENT_STREAM)
+                    .body(BodyInserters.fromServerSentEvents(serverSentEvents));
+        }
         return ServerResponse.ok()
                 .contentType(MediaType.APPLICATION_NDJSON)
-                .body(reviewsSink.asFlux(), Review.class)
+                .body(reviewEvents, ReviewEvent.class)
                 .log();
 
 
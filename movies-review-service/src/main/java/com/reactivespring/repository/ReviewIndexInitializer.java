@@ -0,0 +1,59 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Creates the indexes declared on {@link Review} once the application is ready. Spring Data no longer does it by
+ * itself, and the build runs in the background so the service serves requests meanwhile.
+ */
+@Component
+@Slf4j
+public class ReviewIndexInitializer {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Value("${reviews.mongo.indexRetries:5}")
+    private long indexRetries;
+
+    @Value("${reviews.mongo.indexRetryBackoff:1s}")
+    private Duration indexRetryBackoff;
+
+    private Disposable indexing;
+
+    public ReviewIndexInitializer(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        var indexResolver = new MongoPersistentEntityIndexResolver(reactiveMongoTemplate.getConverter().getMappingContext());
+        var indexOps = reactiveMongoTemplate.indexOps(Review.class);
+        // ensureIndex leaves an existing index with the same definition as it is, every replica can run this
+        indexing = Flux.fromIterable(indexResolver.resolveIndexFor(Review.class))
+                .concatMap(indexOps::ensureIndex)
+                .doOnNext(indexName -> log.info("Review index ensured : {}", indexName))
+                .retryWhen(Retry.backoff(indexRetries, indexRetryBackoff))
+                .subscribe(indexName -> {
+                }, ex -> log.error("Review indexes could not be created : {}", ex.getMessage()));
+    }
+
+    @PreDestroy
+    public void stopIndexing() {
+        if (indexing != null) {
+            indexing.dispose();
+        }
+    }
+}
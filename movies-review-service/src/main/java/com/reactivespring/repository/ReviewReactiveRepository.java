@@ -4,7 +4,7 @@ import com.reactivespring.domain.Review;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
 
-public interface ReviewReactiveRepository extends ReactiveMongoRepository<Review, String> {
+public interface ReviewReactiveRepository extends ReactiveMongoRepository<Review, String>, ReviewReactiveRepositoryCustom {
 
     //Flux<Review> findReviewsByMovieInfoId(String reviewId);
 
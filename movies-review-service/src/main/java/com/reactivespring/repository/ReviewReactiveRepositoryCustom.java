@@ -0,0 +1,84 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieRating;
+import com.reactivespring.domain.MovieReviewCount;
+import com.reactivespring.domain.RatingBucket;
+import com.reactivespring.domain.Review;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * The {@code fields} of the review queries are the ones read and returned, reviewId always among them. Empty means
+ * the whole review.
+ */
+public interface ReviewReactiveRepositoryCustom {
+
+    /**
+     * Keyset page in reviewId order : at most {@code limit} reviews after the {@code after} reviewId, the first page
+     * when null. {@code movieInfoId} narrows it to one movie when not null.
+     */
+    Flux<Review> findReviewsPage(Long movieInfoId, String after, int limit, Collection<String> fields);
+
+    /**
+     * Every review after the {@code after} reviewId in reviewId order, read from the cursor as the subscriber requests
+     * them.
+     */
+    Flux<Review> findReviewsAfter(Long movieInfoId, String after, Collection<String> fields);
+
+    /**
+     * Keyset page of the reviews of all these movies in a single $in query, in reviewId order like
+     * {@link #findReviewsPage}.
+     */
+    Flux<Review> findReviewsByMovieInfoIds(Collection<Long> movieInfoIds, String after, int limit, Collection<String> fields);
+
+    /**
+     * Every review of these movies after the {@code after} reviewId in reviewId order, read from the cursor as the
+     * subscriber requests them.
+     */
+    Flux<Review> findReviewsByMovieInfoIdsAfter(Collection<Long> movieInfoIds, String after, Collection<String> fields);
+
+    /**
+     * Sets the comment and rating of the review in a single find-and-modify, emits the review as it was before the
+     * update or nothing when there is no review with that id or it is being removed. The review is marked with
+     * {@code statsPendingAt} until {@link #clearStatsPending} is called once its stats followed the update.
+     */
+    Mono<Review> updateReview(String reviewId, String comment, Double rating, Instant statsPendingAt);
+
+    /**
+     * Marks the review with {@code statsPendingAt} ahead of its removal, emits it or nothing when there is no review
+     * with that id or it is already being removed. The review isn't updated any more, its rating is the one its removal
+     * takes out of the stats.
+     */
+    Mono<Review> markReview(String reviewId, Instant statsPendingAt);
+
+    /**
+     * Clears the mark of the reviews that are still marked with {@code statsPendingAt}, a later write of one of them
+     * keeps its own.
+     */
+    Mono<Void> clearStatsPending(Collection<String> reviewIds, Instant statsPendingAt);
+
+    /**
+     * Removes the review in a single find-and-remove, emits the removed review or nothing when there was none.
+     */
+    Mono<Review> removeReview(String reviewId);
+
+    /**
+     * The {@code limit} movies with the best average rating among those with at least {@code minReviews} rated
+     * reviews, best first.
+     */
+    Flux<MovieRating> findTopRatedMovies(int limit, long minReviews);
+
+    /**
+     * Rated reviews per movie and whole rating, of one movie when {@code movieInfoId} is not null, in movieInfoId and
+     * rating order.
+     */
+    Flux<RatingBucket> findRatingDistribution(Long movieInfoId);
+
+    /**
+     * Reviews per movie in movieInfoId order.
+     */
+    Flux<MovieReviewCount> countReviewsByMovie();
+}
@@ -0,0 +1,175 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieRating;
+import com.reactivespring.domain.MovieReviewCount;
+import com.reactivespring.domain.RatingBucket;
+import com.reactivespring.domain.Review;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+
+public class ReviewReactiveRepositoryCustomImpl implements ReviewReactiveRepositoryCustom {
+
+    // the groups of a large collection outgrow the 100MB a pipeline stage may hold in memory
+    private static final AggregationOptions ANALYTICS_OPTIONS = AggregationOptions.builder()
+            .allowDiskUse(true)
+            .build();
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReviewReactiveRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<Review> findReviewsPage(Long movieInfoId, String after, int limit, Collection<String> fields) {
+        return reactiveMongoTemplate.find(project(keysetQuery(movieCriteria(movieInfoId), after).limit(limit), fields), Review.class);
+    }
+
+    @Override
+    public Flux<Review> findReviewsAfter(Long movieInfoId, String after, Collection<String> fields) {
+        return reactiveMongoTemplate.find(project(keysetQuery(movieCriteria(movieInfoId), after), fields), Review.class);
+    }
+
+    @Override
+    public Flux<Review> findReviewsByMovieInfoIds(Collection<Long> movieInfoIds, String after, int limit, Collection<String> fields) {
+        var movies = Criteria.where("movieInfoId").in(movieInfoIds);
+        return reactiveMongoTemplate.find(project(keysetQuery(movies, after).limit(limit), fields), Review.class);
+    }
+
+    @Override
+    public Flux<Review> findReviewsByMovieInfoIdsAfter(Collection<Long> movieInfoIds, String after, Collection<String> fields) {
+        var movies = Criteria.where("movieInfoId").in(movieInfoIds);
+        return reactiveMongoTemplate.find(project(keysetQuery(movies, after), fields), Review.class);
+    }
+
+    @Override
+    public Mono<Review> updateReview(String reviewId, String comment, Double rating, Instant statsPendingAt) {
+        // only the edited fields are written, a concurrent update of the same review can't be overwritten with stale values
+        var update = new Update()
+                .set("comment", comment)
+                .set("rating", rating)
+                .set("statsPendingAt", statsPendingAt);
+        // the previous rating is what the review stats need to move the review to its new rating
+        return reactiveMongoTemplate.findAndModify(notRemoving(reviewId), update, Review.class);
+    }
+
+    @Override
+    public Mono<Review> markReview(String reviewId, Instant statsPendingAt) {
+        var update = new Update()
+                .set("statsPendingAt", statsPendingAt)
+                .set("removingAt", statsPendingAt);
+        return reactiveMongoTemplate.findAndModify(notRemoving(reviewId), update,
+                FindAndModifyOptions.options().returnNew(true), Review.class);
+    }
+
+    @Override
+    public Mono<Void> clearStatsPending(Collection<String> reviewIds, Instant statsPendingAt) {
+        var marked = Query.query(Criteria.where("reviewId").in(reviewIds).and("statsPendingAt").is(statsPendingAt));
+        return reactiveMongoTemplate.updateMulti(marked, new Update().unset("statsPendingAt"), Review.class)
+                .then();
+    }
+
+    @Override
+    public Mono<Review> removeReview(String reviewId) {
+        return reactiveMongoTemplate.findAndRemove(byReviewId(reviewId), Review.class);
+    }
+
+    @Override
+    public Flux<MovieRating> findTopRatedMovies(int limit, long minReviews) {
+        var aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("rating").ne(null)),
+                Aggregation.group("movieInfoId")
+                        .count().as("count")
+                        .avg("rating").as("average"),
+                Aggregation.match(Criteria.where("count").gte(minReviews)),
+                // ties go to the movie with more reviews, then to the lowest movieInfoId so the ranking is stable
+                Aggregation.sort(Sort.by(Sort.Order.desc("average"), Sort.Order.desc("count"), Sort.Order.asc("_id"))),
+                Aggregation.limit(limit),
+                Aggregation.project("count", "average").and("movieInfoId").previousOperation())
+                .withOptions(ANALYTICS_OPTIONS);
+        return reactiveMongoTemplate.aggregate(aggregation, Review.class, MovieRating.class);
+    }
+
+    @Override
+    public Flux<RatingBucket> findRatingDistribution(Long movieInfoId) {
+        var rated = Criteria.where("rating").ne(null);
+        if (movieInfoId != null) {
+            rated = rated.and("movieInfoId").is(movieInfoId);
+        }
+        var aggregation = Aggregation.newAggregation(
+                Aggregation.match(rated),
+                Aggregation.project("movieInfoId")
+                        .and(ArithmeticOperators.Floor.floorValueOf("rating")).as("rating"),
+                Aggregation.group("movieInfoId", "rating")
+                        .count().as("count"),
+                Aggregation.sort(Sort.by(Sort.Order.asc("movieInfoId"), Sort.Order.asc("rating"))),
+                Aggregation.project("movieInfoId", "rating", "count").andExclude("_id"))
+                .withOptions(ANALYTICS_OPTIONS);
+        return reactiveMongoTemplate.aggregate(aggregation, Review.class, RatingBucket.class);
+    }
+
+    @Override
+    public Flux<MovieReviewCount> countReviewsByMovie() {
+        var aggregation = Aggregation.newAggregation(
+                Aggregation.group("movieInfoId")
+                        .count().as("count"),
+                Aggregation.sort(Sort.by(Sort.Direction.ASC, "_id")),
+                Aggregation.project("count").and("movieInfoId").previousOperation())
+                .withOptions(ANALYTICS_OPTIONS);
+        return reactiveMongoTemplate.aggregate(aggregation, Review.class, MovieReviewCount.class);
+    }
+
+    private Query project(Query query, Collection<String> fields) {
+        // pushed down to Mongo, the other fields are neither read nor sent; _id is always kept, it is the page cursor
+        fields.forEach(field -> query.fields().include(field));
+        return query;
+    }
+
+    private Query byReviewId(String reviewId) {
+        return Query.query(Criteria.where("reviewId").is(reviewId));
+    }
+
+    private Criteria movieCriteria(Long movieInfoId) {
+        return movieInfoId != null ? Criteria.where("movieInfoId").is(movieInfoId) : new Criteria();
+    }
+
+    private Query notRemoving(String reviewId) {
+        // a removal that died half way stops holding the review after the timeout
+        return Query.query(Criteria.where("reviewId").is(reviewId)
+                .and("removingAt").not().gt(Instant.now().minus(Review.STATS_PENDING_TIMEOUT)));
+    }
+
+    private Query keysetQuery(Criteria movies, String after) {
+        // seeks on the movieInfoId_reviewId index, or the _id index without a movie, instead of skipping, every page costs the same however deep it is
+        if (after == null) {
+            return Query.query(movies)
+                    .with(Sort.by(Sort.Direction.ASC, "reviewId"));
+        }
+        Criteria afterCursor;
+        if (ObjectId.isValid(after)) {
+            afterCursor = Criteria.where("reviewId").gt(new ObjectId(after));
+        } else {
+            // a review stored with a string id before they were rejected : $gt only matches ids of the cursor's type,
+            // and every ObjectId sorts after the strings, so the ObjectIds are the pages that follow the last string
+            afterCursor = new Criteria().orOperator(
+                    Criteria.where("reviewId").gt(after).type(JsonSchemaObject.Type.STRING),
+                    Criteria.where("reviewId").type(JsonSchemaObject.Type.OBJECT_ID));
+        }
+        return Query.query(new Criteria().andOperator(movies, afterCursor))
+                .with(Sort.by(Sort.Direction.ASC, "reviewId"));
+    }
+}
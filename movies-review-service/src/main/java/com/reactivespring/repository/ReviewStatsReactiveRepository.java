@@ -0,0 +1,7 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.ReviewStats;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface ReviewStatsReactiveRepository extends ReactiveMongoRepository<ReviewStats, Long>, ReviewStatsReactiveRepositoryCustom {
+}
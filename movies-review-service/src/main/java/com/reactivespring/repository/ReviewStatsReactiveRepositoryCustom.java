@@ -0,0 +1,33 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+public interface ReviewStatsReactiveRepositoryCustom {
+
+    /**
+     * Counts the ratings of the added reviews in the stats of their movies, one upsert per movie.
+     */
+    Mono<Void> addRatings(Collection<Review> reviews);
+
+    /**
+     * Moves a review of the movie from {@code previousRating} to {@code rating}, either being null when the review
+     * wasn't or isn't rated any more.
+     */
+    Mono<Void> replaceRating(Long movieInfoId, Double previousRating, Double rating);
+
+    /**
+     * Recomputes the stats of the movie from its reviews, which also repairs stats that missed a review write. Empty,
+     * with the stats removed, when the movie has no rated review. A review marked with a recent {@code statsPendingAt}
+     * still has its $inc to come, the rebuild waits for it rather than count the review twice.
+     */
+    Mono<ReviewStats> rebuild(Long movieInfoId);
+
+    /**
+     * Rebuilds the stats of every movie with reviews or stats, and tells how many movies that was.
+     */
+    Mono<Long> rebuildAll();
+}
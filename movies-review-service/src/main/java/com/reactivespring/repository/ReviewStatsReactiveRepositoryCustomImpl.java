@@ -0,0 +1,227 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class ReviewStatsReactiveRepositoryCustomImpl implements ReviewStatsReactiveRepositoryCustom {
+
+    // movies upserted at once when a batch of reviews spans several of them
+    private static final int UPSERT_CONCURRENCY = 8;
+
+    // a write computed from a read stats document lost to another write, it reads the document again
+    private static final RetryBackoffSpec REVISION_CONFLICT_RETRY = Retry.backoff(5, Duration.ofMillis(10))
+            .filter(ex -> ex instanceof OptimisticLockingFailureException || ex instanceof DuplicateKeyException);
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReviewStatsReactiveRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Mono<Void> addRatings(Collection<Review> reviews) {
+        var ratingsByMovieInfoId = reviews.stream()
+                .filter(review -> review.getRating() != null)
+                .collect(Collectors.groupingBy(Review::getMovieInfoId,
+                        Collectors.mapping(Review::getRating, Collectors.toList())));
+        return Flux.fromIterable(ratingsByMovieInfoId.entrySet())
+                .flatMap(ratings -> reactiveMongoTemplate.upsert(byMovieInfoId(ratings.getKey()), addedRatings(ratings.getValue()), ReviewStats.class)
+                        // two first reviews of a movie upserting at once, the loser finds the document on its retry
+                        .retryWhen(Retry.max(1).filter(DuplicateKeyException.class::isInstance)), UPSERT_CONCURRENCY)
+                .then();
+    }
+
+    @Override
+    public Mono<Void> replaceRating(Long movieInfoId, Double previousRating, Double rating) {
+        if (Objects.equals(previousRating, rating)) {
+            return Mono.empty();
+        }
+        if (previousRating == null) {
+            return reactiveMongoTemplate.upsert(byMovieInfoId(movieInfoId), addedRatings(List.of(rating)), ReviewStats.class)
+                    .then();
+        }
+        var update = new Update()
+                .inc("revision", 1)
+                .inc("sum", (rating == null ? 0 : rating) - previousRating);
+        if (rating == null) {
+            update.inc("count", -1)
+                    .inc("histogram." + ReviewStats.bucket(previousRating), -1);
+        } else {
+            update.min("min", rating)
+                    .max("max", rating);
+            if (!ReviewStats.bucket(previousRating).equals(ReviewStats.bucket(rating))) {
+                update.inc("histogram." + ReviewStats.bucket(previousRating), -1)
+                        .inc("histogram." + ReviewStats.bucket(rating), 1);
+            }
+        }
+        return reactiveMongoTemplate.findAndModify(byMovieInfoId(movieInfoId), update,
+                        FindAndModifyOptions.options().returnNew(true), ReviewStats.class)
+                // $inc can't take a bound back, the reviews still rated tell the new one
+                .filter(reviewStats -> previousRating.equals(reviewStats.getMin()) || previousRating.equals(reviewStats.getMax()))
+                .flatMap(reviewStats -> updateBounds(movieInfoId));
+    }
+
+    @Override
+    public Mono<ReviewStats> rebuild(Long movieInfoId) {
+        return Mono.defer(() -> reactiveMongoTemplate.findOne(byMovieInfoId(movieInfoId), ReviewStats.class)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMap(current -> sumRatings(movieInfoId)
+                                // read after the ratings : a review they counted whose $inc is still to come is marked
+                                .flatMap(rebuilt -> statsPending(movieInfoId)
+                                        .flatMap(pending -> pending ? Mono.error(statsPendingConflict(movieInfoId))
+                                                : current.isPresent() ? replace(current.get(), rebuilt) : insert(rebuilt)))))
+                .retryWhen(REVISION_CONFLICT_RETRY);
+    }
+
+    @Override
+    public Mono<Long> rebuildAll() {
+        var statsIds = new Query();
+        statsIds.fields().include("_id");
+        // the movies with reviews, and the ones with stats left from reviews since deleted
+        return Flux.merge(reactiveMongoTemplate.findDistinct(new Query(), "movieInfoId", Review.class, Long.class),
+                        reactiveMongoTemplate.find(statsIds, ReviewStats.class).map(ReviewStats::getMovieInfoId))
+                .distinct()
+                .flatMap(movieInfoId -> rebuild(movieInfoId).thenReturn(movieInfoId), UPSERT_CONCURRENCY)
+                .count();
+    }
+
+    private Mono<ReviewStats> sumRatings(Long movieInfoId) {
+        var aggregation = Aggregation.newAggregation(
+                Aggregation.match(where("movieInfoId").is(movieInfoId).and("rating").ne(null)),
+                Aggregation.project("rating")
+                        .and(ArithmeticOperators.Floor.floorValueOf("rating")).as("bucket"),
+                Aggregation.group("bucket")
+                        .count().as("count")
+                        .sum("rating").as("sum")
+                        .min("rating").as("min")
+                        .max("rating").as("max"));
+        // one document per whole rating, summed up here
+        return reactiveMongoTemplate.aggregate(aggregation, Review.class, Document.class)
+                .reduceWith(() -> new ReviewStats(movieInfoId), (reviewStats, bucket) -> {
+                    var count = bucket.get("count", Number.class).longValue();
+                    var min = bucket.get("min", Number.class).doubleValue();
+                    var max = bucket.get("max", Number.class).doubleValue();
+                    reviewStats.setCount(reviewStats.getCount() + count);
+                    reviewStats.setSum(reviewStats.getSum() + bucket.get("sum", Number.class).doubleValue());
+                    reviewStats.setMin(reviewStats.getMin() == null ? min : Math.min(reviewStats.getMin(), min));
+                    reviewStats.setMax(reviewStats.getMax() == null ? max : Math.max(reviewStats.getMax(), max));
+                    reviewStats.getHistogram().put(ReviewStats.bucket(bucket.get("_id", Number.class).doubleValue()), count);
+                    return reviewStats;
+                });
+    }
+
+    private Mono<Boolean> statsPending(Long movieInfoId) {
+        var marked = query(where("movieInfoId").is(movieInfoId)
+                .and("statsPendingAt").gt(Instant.now().minus(Review.STATS_PENDING_TIMEOUT)));
+        return reactiveMongoTemplate.exists(marked, Review.class);
+    }
+
+    private Mono<ReviewStats> replace(ReviewStats current, ReviewStats rebuilt) {
+        if (rebuilt.getCount() == 0) {
+            // no rated review left, the movie reads as it did before its first one
+            return reactiveMongoTemplate.remove(atRevision(current), ReviewStats.class)
+                    .filter(deleteResult -> deleteResult.getDeletedCount() == 0)
+                    .flatMap(deleteResult -> Mono.error(revisionConflict(current)));
+        }
+        rebuilt.setRevision(current.getRevision() + 1);
+        return reactiveMongoTemplate.findAndReplace(atRevision(current), rebuilt)
+                .switchIfEmpty(Mono.error(() -> revisionConflict(current)))
+                .thenReturn(rebuilt);
+    }
+
+    private Mono<ReviewStats> insert(ReviewStats rebuilt) {
+        if (rebuilt.getCount() == 0) {
+            return Mono.empty();
+        }
+        // a first rating upserted meanwhile fails this on the _id, the retry replaces that document instead
+        rebuilt.setRevision(1);
+        return reactiveMongoTemplate.insert(rebuilt);
+    }
+
+    private Update addedRatings(List<Double> ratings) {
+        var update = new Update()
+                .inc("revision", 1)
+                .inc("count", ratings.size())
+                .inc("sum", ratings.stream().mapToDouble(Double::doubleValue).sum())
+                .min("min", Collections.min(ratings))
+                .max("max", Collections.max(ratings));
+        ratings.stream()
+                .collect(Collectors.groupingBy(ReviewStats::bucket, Collectors.counting()))
+                .forEach((bucket, count) -> update.inc("histogram." + bucket, count));
+        return update;
+    }
+
+    private Mono<Void> updateBounds(Long movieInfoId) {
+        // a rating written between reading the bounds and setting them moves the revision, the bounds are read again
+        return Mono.defer(() -> reactiveMongoTemplate.findOne(byMovieInfoId(movieInfoId), ReviewStats.class)
+                        .flatMap(reviewStats -> Mono.zip(bound(movieInfoId, Sort.Direction.ASC), bound(movieInfoId, Sort.Direction.DESC))
+                                .map(bounds -> new Update()
+                                        .set("min", bounds.getT1())
+                                        .set("max", bounds.getT2()))
+                                .defaultIfEmpty(new Update()
+                                        .unset("min")
+                                        .unset("max"))
+                                .flatMap(update -> reactiveMongoTemplate.updateFirst(atRevision(reviewStats), update.inc("revision", 1), ReviewStats.class))
+                                .filter(updateResult -> updateResult.getMatchedCount() == 0)
+                                .flatMap(updateResult -> Mono.error(revisionConflict(reviewStats)))))
+                .retryWhen(REVISION_CONFLICT_RETRY)
+                .then();
+    }
+
+    private Mono<Double> bound(Long movieInfoId, Sort.Direction direction) {
+        // the first entry of the movieInfoId_rating index in that direction
+        var rated = query(where("movieInfoId").is(movieInfoId).and("rating").ne(null))
+                .with(Sort.by(direction, "rating"))
+                .limit(1);
+        return reactiveMongoTemplate.findOne(rated, Review.class)
+                .map(Review::getRating);
+    }
+
+    private Query byMovieInfoId(Long movieInfoId) {
+        return query(where("movieInfoId").is(movieInfoId));
+    }
+
+    private Query atRevision(ReviewStats reviewStats) {
+        // stats written before the revision was kept have none, they are at revision 0
+        var revision = reviewStats.getRevision() == 0
+                ? where("revision").in(0L, null)
+                : where("revision").is(reviewStats.getRevision());
+        return query(where("movieInfoId").is(reviewStats.getMovieInfoId()).andOperator(revision));
+    }
+
+    private OptimisticLockingFailureException statsPendingConflict(Long movieInfoId) {
+        return new OptimisticLockingFailureException("Review stats of movie " + movieInfoId + " still to follow a review write");
+    }
+
+    private OptimisticLockingFailureException revisionConflict(ReviewStats reviewStats) {
+        return new OptimisticLockingFailureException("Review stats of movie " + reviewStats.getMovieInfoId()
+                + " changed after revision " + reviewStats.getRevision());
+    }
+}
@@ -0,0 +1,48 @@
+package com.reactivespring.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * Rebuilds the review stats of every movie from its reviews once the application is ready, when enabled. It fills
+ * the stats of reviews written before they were kept, and repairs the ones a failed write left behind. The service
+ * serves requests meanwhile, and replicas rebuilding at once don't overwrite each other's writes.
+ */
+@Component
+@Slf4j
+public class ReviewStatsRebuilder {
+
+    private ReviewStatsReactiveRepository reviewStatsReactiveRepository;
+
+    @Value("${reviews.stats.rebuildOnStartup:false}")
+    private boolean rebuildOnStartup;
+
+    private Disposable rebuilding;
+
+    public ReviewStatsRebuilder(ReviewStatsReactiveRepository reviewStatsReactiveRepository) {
+        this.reviewStatsReactiveRepository = reviewStatsReactiveRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildStats() {
+        if (!rebuildOnStartup) {
+            return;
+        }
+        rebuilding = reviewStatsReactiveRepository.rebuildAll()
+                .subscribe(movies -> log.info("Review stats rebuilt for {} movies", movies),
+                        ex -> log.error("Review stats could not be rebuilt : {}", ex.getMessage()));
+    }
+
+    @PreDestroy
+    public void stopRebuilding() {
+        if (rebuilding != null) {
+            rebuilding.dispose();
+        }
+    }
+}
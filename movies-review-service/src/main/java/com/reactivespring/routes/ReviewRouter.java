@@ -18,7 +18,15 @@ public class ReviewRouter {
                 .nest(path("/v1/reviews"), builder ->
                         builder
                                 .GET("", reviewsHandler::getReviews)
+                                .GET("/stats", reviewsHandler::getReviewStats)
+                                // recomputed from the reviews, for stats written before they were kept or that missed a write
+                                .POST("/stats/rebuild", reviewsHandler::rebuildReviewStats)
+                                // aggregated by Mongo, only the results leave the database
+                                .GET("/analytics/top-rated", reviewsHandler::getTopRatedMovies)
+                                .GET("/analytics/rating-distribution", reviewsHandler::getRatingDistribution)
+                                .GET("/analytics/counts", reviewsHandler::getReviewCounts)
                                 .POST("", reviewsHandler::addReview)
+                                .POST("/bulk", reviewsHandler::addReviewsBulk)
                                 .PUT("/{id}", reviewsHandler::updateReview)
                                 .DELETE("/{id}", reviewsHandler::deleteReview)
                                 .GET("/stream", reviewsHandler::getReviewsStream))
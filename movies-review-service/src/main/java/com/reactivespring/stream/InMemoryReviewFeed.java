@@ -0,0 +1,26 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Publishes straight to the local subscribers, reviews saved by other replicas are not seen.
+ */
+@Component
+@ConditionalOnProperty(name = "reviews.stream.source", havingValue = "memory", matchIfMissing = true)
+public class InMemoryReviewFeed implements ReviewFeed {
+
+    private ReviewStreamPublisher reviewStreamPublisher;
+
+    public InMemoryReviewFeed(ReviewStreamPublisher reviewStreamPublisher) {
+        this.reviewStreamPublisher = reviewStreamPublisher;
+    }
+
+    @Override
+    public Mono<Review> append(ReviewEventType type, Review review) {
+        reviewStreamPublisher.publish(type, review);
+        return Mono.just(review);
+    }
+}
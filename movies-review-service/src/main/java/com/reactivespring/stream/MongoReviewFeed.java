@@ -0,0 +1,171 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Appends the review changes to a capped collection and publishes what a tailable cursor over it reads, so every
+ * replica streams the reviews added, updated and deleted by all of them.
+ */
+@Component
+@ConditionalOnProperty(name = "reviews.stream.source", havingValue = "mongo")
+@Slf4j
+public class MongoReviewFeed implements ReviewFeed {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    private ReviewStreamPublisher reviewStreamPublisher;
+
+    @Value("${reviews.stream.mongo.collection:reviewFeed}")
+    private String collectionName;
+
+    @Value("${reviews.stream.mongo.sequenceCollection:reviewFeedSequence}")
+    private String sequenceCollectionName;
+
+    @Value("${reviews.stream.mongo.resumeWindow:1000}")
+    private long resumeWindow;
+
+    @Value("${reviews.stream.mongo.sizeInBytes:16777216}")
+    private long sizeInBytes;
+
+    @Value("${reviews.stream.mongo.maxDocuments:100000}")
+    private long maxDocuments;
+
+    @Value("${reviews.stream.mongo.reconnectMinBackoff:1s}")
+    private Duration reconnectMinBackoff;
+
+    @Value("${reviews.stream.mongo.reconnectMaxBackoff:30s}")
+    private Duration reconnectMaxBackoff;
+
+    @Value("${reviews.stream.mongo.appendRetries:2}")
+    private long appendRetries;
+
+    @Value("${reviews.stream.mongo.appendRetryBackoff:100ms}")
+    private Duration appendRetryBackoff;
+
+    // every entry up to it is taken as published, -1 until the cursor was first opened
+    private volatile long seqFloor = -1;
+
+    // the entries published above the floor, an entry read again by a resumed cursor is not published twice
+    private final NavigableSet<Long> publishedSeqs = new ConcurrentSkipListSet<>();
+
+    private Disposable tailing;
+
+    public MongoReviewFeed(ReactiveMongoTemplate reactiveMongoTemplate, ReviewStreamPublisher reviewStreamPublisher) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.reviewStreamPublisher = reviewStreamPublisher;
+    }
+
+    @Override
+    public Mono<Review> append(ReviewEventType type, Review review) {
+        // the id is set here, an insert retried after it was written fails on it instead of streaming the review twice
+        var entryId = new ObjectId().toHexString();
+        // a seq taken twice by a retry leaves a gap, which a cursor doesn't wait for
+        return Mono.defer(this::nextSeq)
+                .retryWhen(Retry.backoff(appendRetries, appendRetryBackoff))
+                .map(seq -> new ReviewFeedEntry(entryId, seq, type, review))
+                .flatMap(entry -> Mono.defer(() -> reactiveMongoTemplate.insert(entry, collectionName))
+                        .onErrorResume(DuplicateKeyException.class, ex -> Mono.just(entry))
+                        .retryWhen(Retry.backoff(appendRetries, appendRetryBackoff)))
+                .thenReturn(review);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startTailing() {
+        tailing = createCollection()
+                // only what is appended from now on, a retry keeps its position
+                .then(Mono.defer(() -> seqFloor < 0 ? currentSeq() : Mono.empty()))
+                .doOnNext(seq -> seqFloor = seq)
+                .thenMany(Flux.defer(this::tail)
+                        // the cursor dies when the collection wrapped around it
+                        .repeatWhen(completed -> completed.delayElements(reconnectMinBackoff)))
+                .doOnError(ex -> log.info("Review feed tailing failed : {}", ex.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, reconnectMinBackoff)
+                        .maxBackoff(reconnectMaxBackoff)
+                        .transientErrors(true))
+                .subscribe(entry -> reviewStreamPublisher.publish(entry.getType() != null ? entry.getType() : ReviewEventType.ADDED,
+                        entry.getReview()));
+    }
+
+    @PreDestroy
+    public void stopTailing() {
+        if (tailing != null) {
+            tailing.dispose();
+        }
+    }
+
+    private Mono<Void> createCollection() {
+        var options = CollectionOptions.empty()
+                .capped()
+                .size(sizeInBytes)
+                .maxDocuments(maxDocuments);
+        // another replica creating it at the same time fails this one, the retry then finds it
+        return reactiveMongoTemplate.collectionExists(collectionName)
+                .filter(exists -> !exists)
+                .flatMap(exists -> reactiveMongoTemplate.createCollection(collectionName, options))
+                .flatMap(collection -> reactiveMongoTemplate.insert(new ReviewFeedEntry(), collectionName))
+                .then();
+    }
+
+    private Mono<Long> nextSeq() {
+        var increment = new Update().inc("seq", 1);
+        // the first append of all creates the counter, one racing it fails on the _id and its retry increments it
+        return reactiveMongoTemplate.findAndModify(query(where("_id").is(collectionName)), increment,
+                        FindAndModifyOptions.options().returnNew(true).upsert(true), Document.class, sequenceCollectionName)
+                .map(counter -> counter.get("seq", Number.class).longValue());
+    }
+
+    private Mono<Long> currentSeq() {
+        // the last seq taken, an entry still on its way when the cursor is first opened is left out with the older ones
+        return reactiveMongoTemplate.findById(collectionName, Document.class, sequenceCollectionName)
+                .map(counter -> counter.get("seq", Number.class).longValue())
+                .defaultIfEmpty(0L);
+    }
+
+    private Flux<ReviewFeedEntry> tail() {
+        // a cursor reads in insertion order, whichever replica wrote them, and keeps its position for as long as it
+        // lives. Replicas take their seq before they insert, so insertion order is only roughly seq order : a new
+        // cursor reads again from resumeWindow entries before the last one published and skips the ones it already
+        // published. An entry inserted more than resumeWindow entries after its seq was taken is lost on a resume
+        var last = publishedSeqs.isEmpty() ? seqFloor : Math.max(seqFloor, publishedSeqs.last());
+        var entries = query(where("seq").gt(last - resumeWindow));
+        return reactiveMongoTemplate.tail(entries, ReviewFeedEntry.class, collectionName)
+                .filter(entry -> entry.getReview() != null && firstPublished(entry.getSeq()));
+    }
+
+    private boolean firstPublished(long seq) {
+        if (seq <= seqFloor || !publishedSeqs.add(seq)) {
+            return false;
+        }
+        // only the window a resumed cursor reads again is remembered
+        var floor = publishedSeqs.last() - resumeWindow;
+        if (floor > seqFloor) {
+            seqFloor = floor;
+            publishedSeqs.headSet(floor, true).clear();
+        }
+        return true;
+    }
+}
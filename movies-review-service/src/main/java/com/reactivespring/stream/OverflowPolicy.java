@@ -0,0 +1,13 @@
+package com.reactivespring.stream;
+
+/**
+ * What happens to a stream subscriber whose buffer is full.
+ */
+public enum OverflowPolicy {
+    // the oldest buffered review makes room for the new one
+    DROP_OLDEST,
+    // the new review is dropped, the buffered ones are kept
+    DROP_NEWEST,
+    // the subscriber is disconnected, a client that can't keep up has to reconnect and resync
+    DISCONNECT
+}
@@ -0,0 +1,27 @@
+package com.reactivespring.stream;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.reactivespring.domain.Review;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A review as sent on the stream, with what happened to it and the position a client resumes from after a reconnect.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewEvent {
+
+    // <epoch>-<seq>, what a client sends back to resume, only ever resolved by the instance that handed it out
+    private String id;
+
+    private long seq;
+
+    private ReviewEventType type;
+
+    // written as the review fields plus id, seq and type, so clients that only know Review keep reading the stream
+    @JsonUnwrapped
+    private Review review;
+}
@@ -0,0 +1,14 @@
+package com.reactivespring.stream;
+
+/**
+ * What happened to the review carried by a stream event.
+ */
+public enum ReviewEventType {
+    ADDED,
+    // the event carries the review as it is after the update
+    UPDATED,
+    // the event carries the review as it was before it was deleted
+    DELETED,
+    // reviews of the movie were written in bulk, the event carries the movieInfoId only and tells a cache to reload them
+    INVALIDATED
+}
@@ -0,0 +1,13 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import reactor.core.publisher.Mono;
+
+/**
+ * Where added, updated and deleted reviews go to reach the {@code /v1/reviews/stream} subscribers, picked with
+ * {@code reviews.stream.source}.
+ */
+public interface ReviewFeed {
+
+    Mono<Review> append(ReviewEventType type, Review review);
+}
@@ -0,0 +1,23 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewFeedEntry {
+
+    @Id
+    private String id;
+    // taken from a counter shared by the replicas, a cursor resumes by it : ids only grow with the clock of the replica
+    // that made them. 0 in the entry written with the collection and in the entries written before it was kept
+    private long seq;
+    // null in the entries written before updates and deletes were streamed, they were all added reviews
+    private ReviewEventType type;
+    // null for the entry written with the collection, a tailable cursor on an empty capped collection dies at once
+    private Review review;
+}
@@ -0,0 +1,58 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.exception.ReviewStreamPositionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The most recent stream events, by sequence number. Written by a single thread, read by any number.
+ */
+public class ReviewReplayRing {
+
+    private final AtomicReferenceArray<ReviewEvent> events;
+    private final int mask;
+    // sequence number of the last event written, the ring is empty at 0
+    private final AtomicLong head = new AtomicLong();
+
+    public ReviewReplayRing(int capacity) {
+        // rounded up to a power of two, so the slot is a mask away from the sequence number
+        var size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.events = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public void add(ReviewEvent event) {
+        events.set((int) (event.getSeq() & mask), event);
+        head.set(event.getSeq());
+    }
+
+    public long head() {
+        return head.get();
+    }
+
+    /**
+     * The events after {@code fromSeq}, oldest first.
+     *
+     * @throws ReviewStreamPositionException when some of them are no longer held, or {@code fromSeq} was never
+     *                                       handed out by this instance
+     */
+    public List<ReviewEvent> after(long fromSeq) {
+        var last = head.get();
+        if (fromSeq > last || last - fromSeq > events.length()) {
+            throw new ReviewStreamPositionException("Reviews after seq " + fromSeq + " are no longer available, reload the reviews");
+        }
+        var after = new ArrayList<ReviewEvent>((int) (last - fromSeq));
+        for (long seq = fromSeq + 1; seq <= last; seq++) {
+            var event = events.get((int) (seq & mask));
+            // overwritten while reading
+            if (event == null || event.getSeq() != seq) {
+                throw new ReviewStreamPositionException("Reviews after seq " + fromSeq + " are no longer available, reload the reviews");
+            }
+            after.add(event);
+        }
+        return after;
+    }
+}
@@ -0,0 +1,301 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewStreamPositionException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Fans the added, updated and deleted reviews out to the {@code /v1/reviews/stream} subscribers. A save only queues
+ * its review, a single drain thread numbers the reviews and hands them to the subscribers, so a save never waits for
+ * another one nor does any subscriber work. Every subscriber reads from its own bounded buffer, so a stalled client
+ * only ever loses its own reviews and never holds back the others.
+ * Reviews are numbered in the order they go out, and the latest ones are kept so a client can resume where it left.
+ */
+@Component
+@Slf4j
+public class ReviewStreamPublisher {
+
+    // offered to from any thread that completed a save, polled by the drain only
+    private final Queue<ReviewEvent> ingress = Queues.<ReviewEvent>unboundedMultiproducer().get();
+
+    // reviews queued and not drained yet, the publish that moves it off 0 schedules the drain
+    private final AtomicInteger ingressWip = new AtomicInteger();
+
+    private final Scheduler drainScheduler;
+
+    private Sinks.Many<ReviewEvent> reviewsSink = Sinks.many().replay().latest();
+
+    // one sink per watched movie, created with its first subscriber and removed with its last one
+    private Map<Long, Partition> partitions = new ConcurrentHashMap<>();
+
+    private ReviewReplayRing replayRing;
+
+    // prefixes the event ids, an id handed out by another replica or before a restart never resolves here
+    private final String epoch = UUID.randomUUID().toString().substring(0, 8);
+
+    // only touched by the drain
+    private long seq;
+
+    private OverflowPolicy overflowPolicy;
+    private int bufferSize;
+    private MeterRegistry meterRegistry;
+
+    private AtomicLong subscriberIds = new AtomicLong();
+    private AtomicInteger subscribers = new AtomicInteger();
+    private Counter dropped;
+    private Counter disconnects;
+    private Counter emitFailures;
+
+    @Autowired
+    public ReviewStreamPublisher(@Value("${reviews.stream.overflowPolicy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+                                 @Value("${reviews.stream.bufferSize:256}") int bufferSize,
+                                 @Value("${reviews.stream.replaySize:1024}") int replaySize,
+                                 MeterRegistry meterRegistry) {
+        this(overflowPolicy, bufferSize, replaySize, meterRegistry, Schedulers.newSingle("review-stream", true));
+    }
+
+    ReviewStreamPublisher(OverflowPolicy overflowPolicy, int bufferSize, int replaySize, MeterRegistry meterRegistry,
+                          Scheduler drainScheduler) {
+        this.overflowPolicy = overflowPolicy;
+        this.bufferSize = bufferSize;
+        this.drainScheduler = drainScheduler;
+        this.replayRing = new ReviewReplayRing(replaySize);
+        this.meterRegistry = meterRegistry;
+        this.dropped = Counter.builder("reviews.stream.dropped")
+                .tag("policy", overflowPolicy.name())
+                .register(meterRegistry);
+        this.disconnects = Counter.builder("reviews.stream.disconnects")
+                .register(meterRegistry);
+        this.emitFailures = Counter.builder("reviews.stream.emit.failures")
+                .register(meterRegistry);
+        Gauge.builder("reviews.stream.subscribers", subscribers, AtomicInteger::get)
+                .register(meterRegistry);
+        Gauge.builder("reviews.stream.partitions", partitions, Map::size)
+                .register(meterRegistry);
+        Gauge.builder("reviews.stream.seq", replayRing, ReviewReplayRing::head)
+                .register(meterRegistry);
+        Gauge.builder("reviews.stream.ingress.pending", ingressWip, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void dispose() {
+        drainScheduler.dispose();
+    }
+
+    public String epoch() {
+        return epoch;
+    }
+
+    /**
+     * Called from whichever thread completed the save, queues the review and returns. Never blocks, never drops.
+     */
+    public void publish(ReviewEventType type, Review review) {
+        // numbered by the drain
+        ingress.offer(new ReviewEvent(null, 0, type, review));
+        if (ingressWip.getAndIncrement() == 0) {
+            drainScheduler.schedule(this::drain);
+        }
+    }
+
+    // one drain at a time, it keeps going as long as publishes came in while it ran. Nothing may escape it, the
+    // counter would stay above 0 and no later publish would ever be drained
+    private void drain() {
+        var missed = 1;
+        do {
+            ReviewEvent unnumbered;
+            while ((unnumbered = ingress.poll()) != null) {
+                try {
+                    sequence(unnumbered);
+                } catch (RuntimeException e) {
+                    log.warn("{} not published to the stream", unnumbered, e);
+                    emitFailures.increment();
+                }
+            }
+            missed = ingressWip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    // the ring is written before the event goes out, a resuming subscriber relies on it
+    private void sequence(ReviewEvent unnumbered) {
+        var eventSeq = ++seq;
+        var event = new ReviewEvent(epoch + "-" + eventSeq, eventSeq, unnumbered.getType(), unnumbered.getReview());
+        replayRing.add(event);
+        emit(reviewsSink, event);
+        var partition = partitions.get(event.getReview().getMovieInfoId());
+        if (partition != null) {
+            emit(partition.sink, event);
+        }
+    }
+
+    // every sink is only emitted to from the drain, one value at a time, so it is never contended
+    private <T> void emit(Sinks.Many<T> sink, T value) {
+        var emitResult = sink.tryEmitNext(value);
+        if (emitResult.isFailure()) {
+            log.warn("{} not published to the stream : {}", value, emitResult);
+            emitFailures.increment();
+        }
+    }
+
+    public Flux<ReviewEvent> subscribe() {
+        return Flux.defer(() -> new SubscriberBuffer(subscriberIds.incrementAndGet()).attach(reviewsSink.asFlux()));
+    }
+
+    /**
+     * Only the reviews of the given movie, routed here instead of filtered on the client.
+     */
+    public Flux<ReviewEvent> subscribe(Long movieInfoId) {
+        return Flux.defer(() -> new SubscriberBuffer(subscriberIds.incrementAndGet()).attach(partitionEvents(movieInfoId)));
+    }
+
+    /**
+     * The reviews published after the event {@code fromId} followed by the live ones, for all movies when
+     * {@code movieInfoId} is null. Fails with {@link ReviewStreamPositionException} when the reviews after it are no
+     * longer held, or when it was handed out by another instance or before a restart : the client has to reload
+     * them instead.
+     */
+    public Flux<ReviewEvent> resume(Long movieInfoId, String fromId) {
+        return Flux.defer(() -> {
+            var position = seqOf(fromId);
+            if (position == null) {
+                return Flux.error(new ReviewStreamPositionException("Reviews after " + fromId + " are no longer available, reload the reviews"));
+            }
+            long fromSeq = position;
+            var liveEvents = movieInfoId == null ? reviewsSink.asFlux() : partitionEvents(movieInfoId);
+            // live events are held from here on, the ring read below can't miss any
+            var live = Sinks.many().unicast().<ReviewEvent>onBackpressureBuffer();
+            var liveSubscription = liveEvents.subscribe(event -> emit(live, event), live::tryEmitError, live::tryEmitComplete);
+            List<ReviewEvent> missed;
+            try {
+                missed = replayRing.after(fromSeq).stream()
+                        .filter(event -> movieInfoId == null || movieInfoId.equals(event.getReview().getMovieInfoId()))
+                        .collect(Collectors.toList());
+            } catch (RuntimeException e) {
+                liveSubscription.dispose();
+                return Flux.error(e);
+            }
+            // live events come out in seq order, the ones also read from the ring are at the start
+            var lastMissed = missed.isEmpty() ? fromSeq : missed.get(missed.size() - 1).getSeq();
+            var events = Flux.fromIterable(missed)
+                    .concatWith(live.asFlux().filter(event -> event.getSeq() > lastMissed))
+                    .doFinally(signalType -> liveSubscription.dispose());
+            return new SubscriberBuffer(subscriberIds.incrementAndGet()).attach(events);
+        });
+    }
+
+    // null unless the id is one of this instance's
+    private Long seqOf(String id) {
+        var prefix = epoch + "-";
+        if (!id.startsWith(prefix)) {
+            return null;
+        }
+        try {
+            return Long.valueOf(id.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Flux<ReviewEvent> partitionEvents(Long movieInfoId) {
+        return Flux.defer(() -> {
+            var partition = partitions.compute(movieInfoId, (id, existing) -> {
+                var acquired = existing != null ? existing : new Partition();
+                acquired.subscribers++;
+                return acquired;
+            });
+            return partition.sink.asFlux()
+                    .doFinally(signalType -> partitions.computeIfPresent(movieInfoId,
+                            (id, existing) -> --existing.subscribers == 0 ? null : existing));
+        });
+    }
+
+    private static class Partition {
+
+        // every subscriber has its own buffer downstream, so there is always demand and nothing to replay
+        private final Sinks.Many<ReviewEvent> sink = Sinks.many().multicast().directBestEffort();
+
+        // only read and written inside compute, which locks the entry
+        private int subscribers;
+    }
+
+    private class SubscriberBuffer {
+
+        private final String subscriberId;
+        private final AtomicLong depth = new AtomicLong();
+        private final Sinks.Empty<Void> disconnect = Sinks.empty();
+        private final Gauge depthGauge;
+        private final Counter subscriberDropped;
+
+        SubscriberBuffer(long subscriberId) {
+            this.subscriberId = String.valueOf(subscriberId);
+            this.depthGauge = Gauge.builder("reviews.stream.subscriber.buffer", depth, AtomicLong::get)
+                    .tag("subscriber", this.subscriberId)
+                    .register(meterRegistry);
+            this.subscriberDropped = Counter.builder("reviews.stream.subscriber.dropped")
+                    .tag("subscriber", this.subscriberId)
+                    .register(meterRegistry);
+            subscribers.incrementAndGet();
+        }
+
+        Flux<ReviewEvent> attach(Flux<ReviewEvent> reviews) {
+            var buffered = reviews.doOnNext(review -> depth.incrementAndGet());
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    buffered = buffered.onBackpressureBuffer(bufferSize, this::drop, BufferOverflowStrategy.DROP_LATEST);
+                    break;
+                case DISCONNECT:
+                    buffered = buffered.onBackpressureBuffer(bufferSize, this::disconnect, BufferOverflowStrategy.DROP_LATEST);
+                    break;
+                default:
+                    buffered = buffered.onBackpressureBuffer(bufferSize, this::drop, BufferOverflowStrategy.DROP_OLDEST);
+            }
+            return buffered
+                    .doOnNext(review -> depth.decrementAndGet())
+                    // completes right away, without waiting for the client to read what is still buffered
+                    .takeUntilOther(disconnect.asMono())
+                    .doFinally(signalType -> close());
+        }
+
+        private void drop(ReviewEvent event) {
+            depth.decrementAndGet();
+            subscriberDropped.increment();
+            dropped.increment();
+        }
+
+        private void disconnect(ReviewEvent event) {
+            drop(event);
+            if (disconnect.tryEmitEmpty().isSuccess()) {
+                log.info("Stream subscriber {} more than {} reviews behind, disconnecting", subscriberId, bufferSize);
+                disconnects.increment();
+            }
+        }
+
+        private void close() {
+            subscribers.decrementAndGet();
+            meterRegistry.remove(depthGauge);
+            meterRegistry.remove(subscriberDropped);
+        }
+    }
+}
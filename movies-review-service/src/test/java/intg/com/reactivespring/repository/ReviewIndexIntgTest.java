@@ -0,0 +1,106 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class ReviewIndexIntgTest {
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @BeforeEach
+    void setUp() {
+        var reviewsList = LongStream.range(0, 100)
+                .mapToObj(i -> new Review(null, i % 10, "Awesome Movie" + i, (double) (i % 10)))
+                .collect(Collectors.toList());
+        reviewReactiveRepository.saveAll(reviewsList)
+                .blockLast();
+
+        // created in the background once the application is ready
+        StepVerifier.create(Flux.defer(() -> reactiveMongoTemplate.indexOps(Review.class).getIndexInfo())
+                        .map(IndexInfo::getName)
+                        .collectList()
+                        .filter(indexNames -> indexNames.containsAll(List.of("movieInfoId", "movieInfoId_rating", "movieInfoId_reviewId")))
+                        .repeatWhenEmpty(repeat -> repeat.delayElements(Duration.ofMillis(100))))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll()
+                .block();
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_usesIndex() {
+        //when
+        var plan = explain(new Document("find", "review")
+                .append("filter", new Document("movieInfoId", 1L)));
+
+        //then
+        assertTrue(plan.contains("IXSCAN"), plan);
+        assertFalse(plan.contains("COLLSCAN"), plan);
+    }
+
+    @Test
+    void topRatedReviewsByMovieInfoId_usesCompoundIndex() {
+        //when
+        var plan = explain(new Document("find", "review")
+                .append("filter", new Document("movieInfoId", 1L))
+                .append("sort", new Document("rating", -1))
+                .append("limit", 3));
+
+        //then
+        assertTrue(plan.contains("movieInfoId_rating"), plan);
+        // the index order is the sort order, no in-memory SORT stage
+        assertFalse(plan.contains("\"SORT\""), plan);
+    }
+
+    @Test
+    void reviewsPageByMovieInfoId_usesCompoundIndex() {
+        //when
+        var plan = explain(new Document("find", "review")
+                .append("filter", new Document("movieInfoId", 1L)
+                        .append("_id", new Document("$gt", new ObjectId(0, 0))))
+                .append("sort", new Document("_id", 1))
+                .append("limit", 11));
+
+        //then
+        assertTrue(plan.contains("movieInfoId_reviewId"), plan);
+        // the index order is the page order, no in-memory SORT stage
+        assertFalse(plan.contains("\"SORT\""), plan);
+    }
+
+    private String explain(Document command) {
+        var explain = new Document("explain", command)
+                .append("verbosity", "queryPlanner");
+        var result = reactiveMongoTemplate.executeCommand(explain)
+                .block();
+        return ((Document) result.get("queryPlanner")).get("winningPlan", Document.class).toJson();
+    }
+}
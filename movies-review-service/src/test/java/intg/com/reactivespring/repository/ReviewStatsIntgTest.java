@@ -0,0 +1,237 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+public class ReviewStatsIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ReviewStatsReactiveRepository reviewStatsReactiveRepository;
+
+    static String REVIEWS_URL = "/v1/reviews";
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll()
+                .then(reviewStatsReactiveRepository.deleteAll())
+                .block();
+    }
+
+    @Test
+    void reviewStats_maintained() {
+        //given
+        var lowest = addReview(new Review(null, 5L, "Not an Awesome Movie", 2.0));
+        addReview(new Review(null, 5L, "Awesome Movie", 9.0));
+        addReview(new Review(null, 5L, "Excellent Movie", 8.5));
+
+        //when
+        webTestClient
+                .put()
+                .uri(REVIEWS_URL + "/{id}", lowest.getReviewId())
+                .bodyValue(new Review(null, 5L, "Better on a second watch", 7.0))
+                .exchange()
+                .expectStatus().isOk();
+
+        //then
+        var reviewStats = getReviewStats(5L);
+        assertEquals(3, reviewStats.getCount());
+        assertEquals(24.5, reviewStats.getSum());
+        // the lowest rating was moved up, the bound is taken from the reviews left
+        assertEquals(7.0, reviewStats.getMin());
+        assertEquals(9.0, reviewStats.getMax());
+        assertEquals(Map.of("2", 0L, "7", 1L, "8", 1L, "9", 1L), reviewStats.getHistogram());
+    }
+
+    @Test
+    void reviewStats_deleted() {
+        //given
+        var review = addReview(new Review(null, 6L, "Awesome Movie", 9.0));
+
+        //when
+        webTestClient
+                .delete()
+                .uri(REVIEWS_URL + "/{id}", review.getReviewId())
+                .exchange()
+                .expectStatus().isNoContent();
+
+        //then
+        var reviewStats = getReviewStats(6L);
+        assertEquals(0, reviewStats.getCount());
+        assertNull(reviewStats.getMin());
+        assertNull(reviewStats.getAverage());
+    }
+
+    @Test
+    void reviewStats_rebuilt() {
+        //given
+        // written straight to the reviews, the way reviews from before the stats were kept are
+        reviewReactiveRepository.saveAll(List.of(new Review(null, 7L, "Awesome Movie", 9.0),
+                        new Review(null, 7L, "Excellent Movie", 8.5),
+                        new Review(null, 7L, "No rating", null),
+                        new Review(null, 8L, "Not an Awesome Movie", 2.0)))
+                .blockLast();
+        // stats left from a movie whose reviews are all gone
+        reviewStatsReactiveRepository.save(new ReviewStats(9L, 1, 5.0, 5.0, 5.0, Map.of("5", 1L), 0L))
+                .block();
+
+        //when
+        webTestClient
+                .post()
+                .uri(REVIEWS_URL + "/stats/rebuild")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.movies").isEqualTo(3);
+
+        //then
+        var reviewStats = getReviewStats(7L);
+        assertEquals(2, reviewStats.getCount());
+        assertEquals(17.5, reviewStats.getSum());
+        assertEquals(8.5, reviewStats.getMin());
+        assertEquals(9.0, reviewStats.getMax());
+        assertEquals(Map.of("8", 1L, "9", 1L), reviewStats.getHistogram());
+        assertEquals(1, getReviewStats(8L).getCount());
+        assertNull(reviewStatsReactiveRepository.findById(9L).block());
+    }
+
+    @Test
+    void reviewStats_rebuiltTwice() {
+        //given
+        addReview(new Review(null, 10L, "Awesome Movie", 9.0));
+        addReview(new Review(null, 10L, "Excellent Movie", 8.0));
+
+        //when
+        // a rebuild sets what the reviews say, running it again or after the $inc writes changes nothing
+        reviewStatsReactiveRepository.rebuild(10L).block();
+        var reviewStats = reviewStatsReactiveRepository.rebuild(10L).block();
+
+        //then
+        assertEquals(2, reviewStats.getCount());
+        assertEquals(17.0, reviewStats.getSum());
+        // both rebuilds landed on the revision they read
+        assertEquals(4, reviewStats.getRevision());
+        assertEquals(17.0, getReviewStats(10L).getSum());
+    }
+
+    @Test
+    void reviewStats_rebuildWaitsForPendingWrite() {
+        //given
+        addReview(new Review(null, 12L, "Awesome Movie", 9.0));
+        // stored the way the handler does it, the $inc of its rating not landed yet
+        var pending = new Review(null, 12L, "Excellent Movie", 8.0);
+        pending.setStatsPendingAt(Instant.now());
+        var saved = reviewReactiveRepository.save(pending).block();
+
+        //when
+        // counting it now would count it twice once its $inc lands
+        StepVerifier.create(reviewStatsReactiveRepository.rebuild(12L))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify(Duration.ofSeconds(5));
+        reviewStatsReactiveRepository.addRatings(List.of(saved))
+                .then(reviewReactiveRepository.clearStatsPending(List.of(saved.getReviewId()), saved.getStatsPendingAt()))
+                .block();
+        var reviewStats = reviewStatsReactiveRepository.rebuild(12L).block();
+
+        //then
+        assertEquals(2, reviewStats.getCount());
+        assertEquals(17.0, getReviewStats(12L).getSum());
+    }
+
+    @Test
+    void reviewStats_removedReviewNotUpdated() {
+        //given
+        var review = addReview(new Review(null, 13L, "Awesome Movie", 9.0));
+
+        //when
+        // being removed, its rating is the one its removal takes out of the stats
+        reviewReactiveRepository.markReview(review.getReviewId(), Instant.now()).block();
+
+        //then
+        webTestClient
+                .put()
+                .uri(REVIEWS_URL + "/{id}", review.getReviewId())
+                .bodyValue(new Review(null, 13L, "Better on a second watch", 7.0))
+                .exchange()
+                .expectStatus().isNotFound();
+        assertNull(reviewReactiveRepository.markReview(review.getReviewId(), Instant.now()).block());
+    }
+
+    @Test
+    void reviewStats_boundsFollowConcurrentWrites() {
+        //given
+        var reviews = Flux.range(0, 20)
+                .map(i -> new Review(null, 11L, "Movie review " + i, (double) (i % 10)))
+                .flatMap(review -> reviewReactiveRepository.save(review)
+                        .flatMap(saved -> reviewStatsReactiveRepository.addRatings(List.of(saved)).thenReturn(saved)))
+                .collectList()
+                .block();
+
+        //when
+        // every review rated 0 moves up while new lower and higher ratings come in, each move re-reads the bounds
+        Flux.fromIterable(reviews)
+                .filter(review -> review.getRating() == 0.0)
+                .flatMap(review -> reviewReactiveRepository.updateReview(review.getReviewId(), review.getComment(), 5.0, null)
+                        .flatMap(previous -> reviewStatsReactiveRepository.replaceRating(11L, previous.getRating(), 5.0)))
+                .mergeWith(reviewReactiveRepository.save(new Review(null, 11L, "Lowest", 0.5))
+                        .flatMap(saved -> reviewStatsReactiveRepository.addRatings(List.of(saved))))
+                .mergeWith(reviewReactiveRepository.save(new Review(null, 11L, "Highest", 9.5))
+                        .flatMap(saved -> reviewStatsReactiveRepository.addRatings(List.of(saved))))
+                .blockLast();
+
+        //then
+        var reviewStats = getReviewStats(11L);
+        assertEquals(0.5, reviewStats.getMin());
+        assertEquals(9.5, reviewStats.getMax());
+        assertEquals(22, reviewStats.getCount());
+    }
+
+    private Review addReview(Review review) {
+        return webTestClient
+                .post()
+                .uri(REVIEWS_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private ReviewStats getReviewStats(Long movieInfoId) {
+        return webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stats?movieInfoId={movieInfoId}", movieInfoId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ReviewStats.class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
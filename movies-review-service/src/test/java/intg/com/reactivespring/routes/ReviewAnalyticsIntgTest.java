@@ -0,0 +1,98 @@
+package com.reactivespring.routes;
+
+import com.reactivespring.domain.MovieRating;
+import com.reactivespring.domain.MovieReviewCount;
+import com.reactivespring.domain.RatingBucket;
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+public class ReviewAnalyticsIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    static String ANALYTICS_URL = "/v1/reviews/analytics";
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll()
+                .block();
+    }
+
+    @Test
+    void getTopRatedMovies() {
+        //given
+        reviewReactiveRepository.saveAll(List.of(
+                        new Review(null, 1L, "Awesome Movie", 9.0),
+                        new Review(null, 1L, "Awesome Movie1", 8.0),
+                        new Review(null, 2L, "Excellent Movie", 10.0),
+                        new Review(null, 3L, "Good Movie", 7.0),
+                        new Review(null, 3L, "Good Movie1", 6.0),
+                        new Review(null, 3L, "No rating", null)))
+                .blockLast();
+
+        //when
+        webTestClient
+                .get()
+                .uri(ANALYTICS_URL + "/top-rated?limit=5&minReviews=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieRating.class)
+                // movie 2 has a single review
+                .isEqualTo(List.of(new MovieRating(1L, 2, 8.5), new MovieRating(3L, 2, 6.5)));
+    }
+
+    @Test
+    void getRatingDistribution() {
+        //given
+        reviewReactiveRepository.saveAll(List.of(
+                        new Review(null, 1L, "Awesome Movie", 9.0),
+                        new Review(null, 1L, "Awesome Movie1", 9.5),
+                        new Review(null, 1L, "Good Movie", 7.0),
+                        new Review(null, 2L, "Excellent Movie", 10.0)))
+                .blockLast();
+
+        //when
+        webTestClient
+                .get()
+                .uri(ANALYTICS_URL + "/rating-distribution?movieInfoId=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(RatingBucket.class)
+                .isEqualTo(List.of(new RatingBucket(1L, 7L, 1), new RatingBucket(1L, 9L, 2)));
+    }
+
+    @Test
+    void getReviewCounts() {
+        //given
+        reviewReactiveRepository.saveAll(List.of(
+                        new Review(null, 2L, "Excellent Movie", 10.0),
+                        new Review(null, 1L, "Awesome Movie", 9.0),
+                        new Review(null, 1L, "No rating", null)))
+                .blockLast();
+
+        //when
+        webTestClient
+                .get()
+                .uri(ANALYTICS_URL + "/counts")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieReviewCount.class)
+                .isEqualTo(List.of(new MovieReviewCount(1L, 2), new MovieReviewCount(2L, 1)));
+    }
+}
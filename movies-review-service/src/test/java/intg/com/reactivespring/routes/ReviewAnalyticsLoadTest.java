@@ -0,0 +1,122 @@
+package com.reactivespring.routes;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.MovieRating;
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the top-rated aggregation with what the reporting jobs did before it, every review through the API and
+ * aggregated by the client, on growing datasets. Left out of ./gradlew test, ./gradlew loadTest runs it.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@Tag("load")
+public class ReviewAnalyticsLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ReviewAnalyticsLoadTest.class);
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    static String ANALYTICS_URL = "/v1/reviews/analytics";
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll()
+                .block();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1_000, 10_000, 100_000})
+    void getTopRatedMovies_datasetSizes(int reviews) {
+        //given
+        var dataset = LongStream.range(0, reviews)
+                .mapToObj(i -> new Review(null, i % 500, "Review comment of a typical length " + i, (double) (i * 7 % 11)))
+                .collect(Collectors.toList());
+        reviewReactiveRepository.insert(dataset)
+                .blockLast();
+
+        //when
+        var aggregateNanos = System.nanoTime();
+        var aggregated = webTestClient
+                .get()
+                .uri(ANALYTICS_URL + "/top-rated?limit=10&minReviews=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieRating.class)
+                .returnResult();
+        aggregateNanos = System.nanoTime() - aggregateNanos;
+
+        var clientNanos = System.nanoTime();
+        var streamed = webTestClient
+                .mutate()
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(64 * 1024 * 1024))
+                .build()
+                .get()
+                .uri("/v1/reviews")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+        var clientTopRated = streamed.lines()
+                .map(this::readReview)
+                .collect(Collectors.groupingBy(Review::getMovieInfoId, Collectors.averagingDouble(Review::getRating)))
+                .entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(10)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        clientNanos = System.nanoTime() - clientNanos;
+
+        //then
+        var aggregatedBytes = aggregated.getResponseBodyContent().length;
+        log.info("reviews : {}, aggregation : {}ms, {} bytes, client side : {}ms, {} bytes", reviews,
+                aggregateNanos / 1_000_000, aggregatedBytes, clientNanos / 1_000_000, streamed.length());
+        assertEquals(clientTopRated, aggregated.getResponseBody().stream()
+                .map(MovieRating::getMovieInfoId)
+                .collect(Collectors.toList()));
+        // only the ten results leave the database, whatever the number of reviews
+        assertTrue(aggregatedBytes < 2048, () -> "aggregation : " + aggregatedBytes + " bytes");
+        assertTrue(aggregatedBytes * 100 < streamed.length(),
+                () -> "aggregation : " + aggregatedBytes + " bytes, client side : " + streamed.length() + " bytes");
+    }
+
+    private Review readReview(String line) {
+        try {
+            return objectMapper.readValue(line, Review.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
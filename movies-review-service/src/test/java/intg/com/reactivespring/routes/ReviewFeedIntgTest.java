@@ -0,0 +1,210 @@
+package com.reactivespring.routes;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.stream.MongoReviewFeed;
+import com.reactivespring.stream.ReviewFeed;
+import com.reactivespring.stream.ReviewEventType;
+import com.reactivespring.stream.ReviewFeedEntry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@TestPropertySource(properties = {
+        "reviews.stream.source=mongo",
+        "reviews.stream.mongo.reconnectMinBackoff=100ms",
+})
+public class ReviewFeedIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    ReviewFeed reviewFeed;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    static String REVIEWS_URL = "/v1/reviews";
+
+    @Test
+    void getReviewsStream_appended() {
+        //given
+        assertTrue(reviewFeed instanceof MongoReviewFeed);
+        var review = new Review("feed-1", 7L, "Awesome Movie", 9.0);
+        // the cursor is opened once the application is ready, appending until the review shows up covers that
+        var appending = Flux.interval(Duration.ofMillis(200))
+                .concatMap(i -> reviewFeed.append(ReviewEventType.ADDED, review))
+                .subscribe();
+
+        //when
+        var reviewStreamFlux = webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stream?movieInfoId=7")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(reviewStreamFlux)
+                .assertNext(rev -> assertEquals("feed-1", rev.getReviewId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+        appending.dispose();
+    }
+
+    @Test
+    void getReviewsStream_resumedAfterReconnect() {
+        //given
+        var mongoReviewFeed = (MongoReviewFeed) reviewFeed;
+        var first = new Review("feed-3", 9L, "Awesome Movie", 9.0);
+        var second = new Review("feed-4", 9L, "Excellent Movie", 8.0);
+        var seen = new AtomicBoolean();
+        var appended = Flux.interval(Duration.ofMillis(200))
+                .takeWhile(i -> !seen.get())
+                .concatMap(i -> reviewFeed.append(ReviewEventType.ADDED, first))
+                .count()
+                .toFuture();
+        var receivedAgain = new AtomicLong();
+
+        //when
+        var reviewStreamFlux = webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stream?movieInfoId=9")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(reviewStreamFlux)
+                .assertNext(rev -> {
+                    assertEquals("feed-3", rev.getReviewId());
+                    seen.set(true);
+                })
+                .then(() -> {
+                    // nothing more is appended once the count is known, the second review is written while no cursor is open
+                    appended.join();
+                    mongoReviewFeed.stopTailing();
+                    reviewFeed.append(ReviewEventType.ADDED, second).block();
+                    mongoReviewFeed.startTailing();
+                })
+                // the appends that were still on their way when the first one came out
+                .thenConsumeWhile(rev -> "feed-3".equals(rev.getReviewId()), rev -> receivedAgain.incrementAndGet())
+                .assertNext(rev -> assertEquals("feed-4", rev.getReviewId()))
+                // the new cursor starts after the last entry published, nothing comes out twice
+                .expectNoEvent(Duration.ofSeconds(1))
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+        assertEquals(appended.join(), 1 + receivedAgain.get());
+    }
+
+    @Test
+    void getReviewsStream_resumedPastEntriesInsertedOutOfSeqOrder() {
+        //given
+        var mongoReviewFeed = (MongoReviewFeed) reviewFeed;
+        var marker = new Review("feed-5", 10L, "Awesome Movie", 9.0);
+        var seen = new AtomicBoolean();
+        var appending = Flux.interval(Duration.ofMillis(200))
+                .takeWhile(i -> !seen.get())
+                .concatMap(i -> reviewFeed.append(ReviewEventType.ADDED, marker))
+                .count()
+                .toFuture();
+
+        //when
+        var reviewStreamFlux = webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stream?movieInfoId=10")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(reviewStreamFlux)
+                .assertNext(rev -> {
+                    assertEquals("feed-5", rev.getReviewId());
+                    seen.set(true);
+                })
+                .then(() -> {
+                    appending.join();
+                    mongoReviewFeed.stopTailing();
+                    // two replicas took their seq in one order and inserted in the other, while no cursor was open
+                    var earlierSeq = nextSeq().block();
+                    var laterSeq = nextSeq().block();
+                    reactiveMongoTemplate.insert(new ReviewFeedEntry(null, laterSeq, ReviewEventType.ADDED,
+                            new Review("feed-7", 10L, "Excellent Movie", 8.0)), "reviewFeed").block();
+                    reactiveMongoTemplate.insert(new ReviewFeedEntry(null, earlierSeq, ReviewEventType.ADDED,
+                            new Review("feed-6", 10L, "Good Movie", 7.0)), "reviewFeed").block();
+                    mongoReviewFeed.startTailing();
+                })
+                .thenConsumeWhile(rev -> "feed-5".equals(rev.getReviewId()))
+                // in insertion order, neither is lost by the resume nor is anything published again
+                .assertNext(rev -> assertEquals("feed-7", rev.getReviewId()))
+                .assertNext(rev -> assertEquals("feed-6", rev.getReviewId()))
+                .expectNoEvent(Duration.ofSeconds(1))
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void getReviewsStream_appendedByAnotherReplica() {
+        //given
+        var review = new Review("feed-2", 8L, "Excellent Movie", 8.0);
+        // written straight to the capped collection, the way another instance would
+        var appending = Flux.interval(Duration.ofMillis(200))
+                .concatMap(i -> nextSeq()
+                        .flatMap(seq -> reactiveMongoTemplate.insert(new ReviewFeedEntry(null, seq, ReviewEventType.ADDED, review), "reviewFeed")))
+                .subscribe();
+
+        //when
+        var reviewStreamFlux = webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stream?movieInfoId=8")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(reviewStreamFlux)
+                .assertNext(rev -> assertEquals("feed-2", rev.getReviewId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+        appending.dispose();
+    }
+
+    // takes the seq the way another instance would
+    private Mono<Long> nextSeq() {
+        return reactiveMongoTemplate.findAndModify(query(where("_id").is("reviewFeed")), new Update().inc("seq", 1),
+                        FindAndModifyOptions.options().returnNew(true).upsert(true), Document.class, "reviewFeedSequence")
+                .map(counter -> counter.get("seq", Number.class).longValue());
+    }
+}
@@ -1,6 +1,7 @@
 package com.reactivespring.routes;
 
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBulkResult;
 import com.reactivespring.repository.ReviewReactiveRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,6 +9,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.test.StepVerifier;
@@ -18,6 +20,7 @@ import java.util.Objects;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
@@ -80,6 +83,97 @@ public class ReviewsIntgTest {
 
     }
 
+    @Test
+    void getReviews_Paged() {
+        //given
+
+        //when
+        var firstPage = webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?limit=2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(2)
+                .returnResult();
+        var nextCursor = firstPage.getResponseHeaders().getFirst("X-Next-Cursor");
+        assertEquals(firstPage.getResponseBody().get(1).getReviewId(), nextCursor);
+
+        //then
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?limit=2&after={after}", nextCursor)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader().doesNotExist("X-Next-Cursor")
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(1, reviews.size());
+                    assertEquals("Excellent Movie", reviews.get(0).getComment());
+                });
+
+    }
+
+    @Test
+    void getReviews_PagedPastStringReviewId() {
+        //given
+        // stored before string ids were rejected, it sorts before every ObjectId
+        reviewReactiveRepository.save(new Review("legacy-1", 1L, "Legacy Movie", 7.0)).block();
+
+        //when
+        var firstPage = webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&limit=1")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(1)
+                .returnResult();
+        var nextCursor = firstPage.getResponseHeaders().getFirst("X-Next-Cursor");
+        assertEquals("legacy-1", nextCursor);
+
+        //then
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&after={after}", nextCursor)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(2, reviews.size());
+                    assertEquals("Awesome Movie", reviews.get(0).getComment());
+                });
+
+    }
+
+    @Test
+    void getReviewsByMovieInfoId_Ndjson() {
+        //given
+
+        //when
+        var reviewFlux = webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoId=1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(reviewFlux, 1)
+                .assertNext(review -> assertEquals("Awesome Movie", review.getComment()))
+                .thenRequest(1)
+                .assertNext(review -> assertEquals("Awesome Movie1", review.getComment()))
+                .verifyComplete();
+
+    }
+
     @Test
     void getReviews_Stream() {
 
@@ -141,6 +235,86 @@ public class ReviewsIntgTest {
 
     }
 
+    @Test
+    void getReviewsByMovieInfoId_Fields() {
+        //given
+
+        //when
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&fields=reviewId,rating")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .value(reviewList -> {
+                    assertEquals(2, reviewList.size());
+                    reviewList.forEach(review -> {
+                        assertNotNull(review.getReviewId());
+                        assertEquals(9.0, review.getRating());
+                        assertNull(review.getComment());
+                        assertNull(review.getMovieInfoId());
+                    });
+                });
+
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds() {
+        //given
+
+        //when
+        webTestClient
+                .get()
+                .uri(uriBuilder -> {
+                    return uriBuilder.path(REVIEWS_URL)
+                            .queryParam("movieInfoIds", "2,1")
+                            .build();
+                })
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .value(reviewList -> {
+                    assertEquals(3, reviewList.size());
+                    assertEquals(1L, reviewList.get(0).getMovieInfoId());
+                    assertEquals(2L, reviewList.get(2).getMovieInfoId());
+                });
+
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_Paged() {
+        //given
+
+        //when
+        var firstPage = webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoIds=2,1&limit=2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(2)
+                .returnResult();
+        var nextCursor = firstPage.getResponseHeaders().getFirst("X-Next-Cursor");
+
+        //then
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoIds=2,1&limit=2&after={after}", nextCursor)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader().doesNotExist("X-Next-Cursor")
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(1, reviews.size());
+                    assertEquals(2L, reviews.get(0).getMovieInfoId());
+                });
+
+    }
+
     @Test
     void addReview() {
         //given
@@ -161,6 +335,33 @@ public class ReviewsIntgTest {
 
     }
 
+    @Test
+    void addReviewsBulk() {
+        //given
+        var body = "{\"movieInfoId\":3, \"comment\": \"Awesome Movie\", \"rating\":9.0}\n"
+                + "{\"movieInfoId\":3, \"comment\": \"Awesome Movie1\", \"rating\":8.0}\n"
+                + "{\"movieInfoId\":3, \"comment\": \"Excellent Movie\", \"rating\":-1.0}\n";
+
+        //when
+        webTestClient
+                .post()
+                .uri(REVIEWS_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ReviewBulkResult.class)
+                .value(result -> {
+                    assertEquals(2, result.getInserted());
+                    assertEquals(1, result.getRejected());
+                });
+
+        //then
+        StepVerifier.create(reviewReactiveRepository.findReviewsByMovieInfoId(3L))
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
     @Test
     void updateReview() {
         //given
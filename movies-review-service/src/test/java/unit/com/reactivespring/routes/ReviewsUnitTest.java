@@ -1,40 +1,76 @@
 package com.reactivespring.routes;
 
+import com.reactivespring.domain.MovieRating;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBulkResult;
+import com.reactivespring.domain.ReviewStats;
 import com.reactivespring.exceptionhandler.GlobalErrorHandler;
 import com.reactivespring.handler.ReviewsHandler;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewStatsReactiveRepository;
+import com.reactivespring.stream.InMemoryReviewFeed;
+import com.reactivespring.stream.ReviewEventType;
+import com.reactivespring.stream.ReviewFeed;
+import com.reactivespring.stream.ReviewStreamPublisher;
 import com.reactivespring.validator.ReviewValidator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 @WebFluxTest
-@ContextConfiguration(classes = {ReviewRouter.class, ReviewsHandler.class, GlobalErrorHandler.class})
+@ContextConfiguration(classes = {ReviewRouter.class, ReviewsHandler.class, ReviewStreamPublisher.class, InMemoryReviewFeed.class, SimpleMeterRegistry.class, GlobalErrorHandler.class})
 @AutoConfigureWebTestClient
+@TestPropertySource(properties = "reviews.bulk.batchSize=2")
 public class ReviewsUnitTest {
 
     @MockBean
     private ReviewReactiveRepository reviewReactiveRepository;
 
+    @MockBean
+    private ReviewStatsReactiveRepository reviewStatsReactiveRepository;
+
     @MockBean
     private ReviewValidator reviewValidator;
 
+    @Autowired
+    private ReviewStreamPublisher reviewStreamPublisher;
+
+    @SpyBean
+    private ReviewFeed reviewFeed;
+
     @Autowired
     private WebTestClient webTestClient;
 
+    @BeforeEach
+    void setUp() {
+        when(reviewStatsReactiveRepository.addRatings(any())).thenReturn(Mono.empty());
+        when(reviewStatsReactiveRepository.replaceRating(any(), any(), any())).thenReturn(Mono.empty());
+        when(reviewReactiveRepository.clearStatsPending(any(), any())).thenReturn(Mono.empty());
+    }
+
     @Test
     void getAllReviews() {
         //given
@@ -43,7 +79,7 @@ public class ReviewsUnitTest {
                 new Review(null, 1L, "Awesome Movie1", 9.0),
                 new Review(null, 2L, "Excellent Movie", 8.0));
 
-        when(reviewReactiveRepository.findAll()).thenReturn(Flux.fromIterable(reviewList));
+        when(reviewReactiveRepository.findReviewsPage(null, null, 101, List.of())).thenReturn(Flux.fromIterable(reviewList));
         doCallRealMethod().when(reviewValidator).validate(any(), any());
 
         //when
@@ -60,6 +96,322 @@ public class ReviewsUnitTest {
 
     }
 
+    @Test
+    void getReviews_NextPage() {
+        //given
+        var reviewList = List.of(
+                new Review("a1", 1L, "Awesome Movie", 9.0),
+                new Review("a2", 1L, "Awesome Movie1", 9.0),
+                new Review("a3", 2L, "Excellent Movie", 8.0));
+
+        when(reviewReactiveRepository.findReviewsPage(null, "a0", 3, List.of())).thenReturn(Flux.fromIterable(reviewList));
+
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/reviews?limit=2&after=a0")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader().valueEquals("X-Next-Cursor", "a2")
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(2, reviews.size());
+                    assertEquals("a2", reviews.get(1).getReviewId());
+                });
+
+    }
+
+    @Test
+    void getReviewsByMovieInfoId_LastPage() {
+        //given
+        var reviewList = List.of(
+                new Review("a1", 1L, "Awesome Movie", 9.0),
+                new Review("a2", 1L, "Awesome Movie1", 9.0));
+
+        when(reviewReactiveRepository.findReviewsPage(1L, null, 3, List.of())).thenReturn(Flux.fromIterable(reviewList));
+
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/reviews?movieInfoId=1&limit=2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader().doesNotExist("X-Next-Cursor")
+                .expectBodyList(Review.class)
+                .value(reviews -> assertEquals(2, reviews.size()));
+
+    }
+
+    @Test
+    void getReviews_InvalidLimit() {
+        webTestClient
+                .get()
+                .uri("/v1/reviews?limit=0")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("limit : must be a number between 1 and 1000");
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds() {
+        //given
+        var reviewList = List.of(
+                new Review(null, 1L, "Awesome Movie", 9.0),
+                new Review(null, 1L, "Awesome Movie1", 9.0),
+                new Review(null, 2L, "Excellent Movie", 8.0));
+
+        when(reviewReactiveRepository.findReviewsByMovieInfoIds(List.of(1L, 2L), null, 101, List.of())).thenReturn(Flux.fromIterable(reviewList));
+
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/reviews?movieInfoIds=1,2,1")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(3, reviews.size());
+                });
+
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_NextPage() {
+        //given
+        var reviewList = List.of(
+                new Review("a1", 1L, "Awesome Movie", 9.0),
+                new Review("a2", 2L, "Excellent Movie", 8.0),
+                new Review("a3", 1L, "Awesome Movie1", 9.0));
+
+        when(reviewReactiveRepository.findReviewsByMovieInfoIds(List.of(1L, 2L), "a0", 3, List.of())).thenReturn(Flux.fromIterable(reviewList));
+
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/reviews?movieInfoIds=1,2&limit=2&after=a0")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader().valueEquals("X-Next-Cursor", "a2")
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(2, reviews.size());
+                    assertEquals("a2", reviews.get(1).getReviewId());
+                });
+
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_Ndjson() {
+        //given
+        when(reviewReactiveRepository.findReviewsByMovieInfoIdsAfter(List.of(1L, 2L), "a1", List.of()))
+                .thenReturn(Flux.just(new Review("a2", 2L, "Excellent Movie", 8.0)));
+
+        //when
+        var reviewFlux = webTestClient
+                .get()
+                .uri("/v1/reviews?movieInfoIds=1,2&after=a1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(reviewFlux)
+                .assertNext(review -> assertEquals("a2", review.getReviewId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void getReviewsByMovieInfoId_Ndjson() {
+        //given
+        var reviewList = List.of(
+                new Review("a2", 1L, "Awesome Movie1", 9.0),
+                new Review("a3", 1L, "Awesome Movie2", 7.0));
+
+        when(reviewReactiveRepository.findReviewsAfter(1L, "a1", List.of())).thenReturn(Flux.fromIterable(reviewList));
+
+        //when
+        var reviewFlux = webTestClient
+                .get()
+                .uri("/v1/reviews?movieInfoId=1&after=a1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader().contentType(MediaType.APPLICATION_NDJSON)
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(reviewFlux)
+                .assertNext(review -> assertEquals("a2", review.getReviewId()))
+                .assertNext(review -> assertEquals("a3", review.getReviewId()))
+                .verifyComplete();
+        verify(reviewReactiveRepository, never()).findReviewsPage(any(), any(), anyInt(), any());
+    }
+
+    @Test
+    void getReviews_Fields() {
+        //given
+        when(reviewReactiveRepository.findReviewsPage(1L, null, 101, List.of("rating")))
+                .thenReturn(Flux.just(new Review("a1", null, null, 9.0)));
+
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/reviews?movieInfoId=1&fields=rating")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].reviewId").isEqualTo("a1")
+                .jsonPath("$[0].rating").isEqualTo(9.0)
+                .jsonPath("$[0].comment").doesNotExist()
+                .jsonPath("$[0].movieInfoId").doesNotExist();
+    }
+
+    @Test
+    void getReviewsStream_Fields() {
+        //given
+        when(reviewReactiveRepository.findReviewsAfter(1L, null, List.of("rating")))
+                .thenReturn(Flux.just(new Review("a1", null, null, 9.0)));
+
+        //when
+        var reviewLines = webTestClient
+                .get()
+                .uri("/v1/reviews?movieInfoId=1&fields=rating")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        //then
+        assertEquals("{\"reviewId\":\"a1\",\"rating\":9.0}", reviewLines.trim());
+    }
+
+    @Test
+    void getReviews_NullFieldsWritten() {
+        //given
+        when(reviewReactiveRepository.findReviewsPage(1L, null, 101, List.of()))
+                .thenReturn(Flux.just(new Review("a1", 1L, "No rating yet", null)));
+
+        //when
+        // only a projection leaves fields out, a review in full is written with its null rating
+        webTestClient
+                .get()
+                .uri("/v1/reviews?movieInfoId=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].comment").isEqualTo("No rating yet")
+                .jsonPath("$[0]").value(review -> assertTrue(((Map<?, ?>) review).containsKey("rating")));
+    }
+
+    @Test
+    void getReviews_InvalidFields() {
+        webTestClient
+                .get()
+                .uri("/v1/reviews?fields=rating,author")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("fields : must be a comma separated list of reviewId, movieInfoId, comment, rating");
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_Invalid() {
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/reviews?movieInfoIds=1,abc")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("movieInfoIds : must be a comma separated list of numbers");
+
+    }
+
+    @Test
+    void getReviewsStream_InvalidMovieInfoId() {
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/reviews/stream?movieInfoId=abc")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("movieInfoId : must be a number");
+
+    }
+
+    @Test
+    void getReviewsStream_Resume() {
+        //given
+        var review = new Review(null, 23L, "Awesome Movie", 9.0);
+        when(reviewReactiveRepository.save(isA(Review.class))).thenReturn(Mono.just(new Review("abc", 23L, "Awesome Movie", 9.0)));
+        webTestClient
+                .post()
+                .uri("/v1/reviews")
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isCreated();
+
+        //when
+        var reviewStreamFlux = webTestClient
+                .get()
+                .uri("/v1/reviews/stream?movieInfoId=23&fromSeq={fromId}", reviewStreamPublisher.epoch() + "-0")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(reviewStreamFlux)
+                .assertNext(reviewEvent -> {
+                    assertTrue(reviewEvent.contains("\"id\":\"" + reviewStreamPublisher.epoch() + "-"));
+                    assertTrue(reviewEvent.contains("\"reviewId\":\"abc\""));
+                })
+                .thenCancel()
+                .verify();
+
+    }
+
+    @Test
+    void getReviewsStream_ResumeUnavailable() {
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/reviews/stream?fromSeq={fromId}", reviewStreamPublisher.epoch() + "-100000")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.GONE)
+                .expectBody(String.class)
+                .isEqualTo("Reviews after seq 100000 are no longer available, reload the reviews");
+
+    }
+
+    @Test
+    void getReviewsStream_ResumeOtherInstance() {
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/reviews/stream")
+                .header("Last-Event-ID", "0badc0de-1")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.GONE)
+                .expectBody(String.class)
+                .isEqualTo("Reviews after 0badc0de-1 are no longer available, reload the reviews");
+
+    }
+
     @Test
     void addReview() {
         //given
@@ -82,7 +434,155 @@ public class ReviewsUnitTest {
                     assertEquals("abc", savedReview.getReviewId());
 
                 });
+        verify(reviewStatsReactiveRepository).addRatings(List.of(new Review("abc", 1L, "Awesome Movie", 9.0)));
+        // stored marked, the mark comes off once the stats followed it
+        verify(reviewReactiveRepository).save(argThat(saved -> saved.getStatsPendingAt() != null));
+        verify(reviewReactiveRepository).clearStatsPending(eq(List.of("abc")), any());
+
+    }
+
+    @Test
+    void addReview_StatsRebuilt() {
+        //given
+        var review = new Review(null, 1L, "Awesome Movie", 9.0);
+        when(reviewReactiveRepository.save(isA(Review.class))).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
+        when(reviewStatsReactiveRepository.addRatings(any())).thenReturn(Mono.error(new IllegalStateException("Review stats unavailable")));
+        when(reviewStatsReactiveRepository.rebuild(1L)).thenReturn(Mono.error(new IllegalStateException("Review stats unavailable")));
+
+        //when
+        // the review is stored, the stats are left to a rebuild
+        webTestClient
+                .post()
+                .uri("/v1/reviews")
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Review.class)
+                .value(savedReview -> assertEquals("abc", savedReview.getReviewId()));
+
+        //then
+        // its own mark would hold the rebuild back
+        var inOrder = inOrder(reviewReactiveRepository, reviewStatsReactiveRepository);
+        inOrder.verify(reviewReactiveRepository).clearStatsPending(eq(List.of("abc")), any());
+        inOrder.verify(reviewStatsReactiveRepository).rebuild(1L);
+    }
+
+    @Test
+    void addReview_NotStreamed() {
+        //given
+        var review = new Review(null, 1L, "Awesome Movie", 9.0);
+        when(reviewReactiveRepository.save(isA(Review.class))).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
+        doReturn(Mono.error(new IllegalStateException("Review feed unavailable"))).when(reviewFeed).append(any(), any());
+
+        //when
+        // stored is stored, a 500 would have the client store it again
+        webTestClient
+                .post()
+                .uri("/v1/reviews")
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Review.class)
+                .value(savedReview -> assertEquals("abc", savedReview.getReviewId()));
+
+    }
+
+    @Test
+    void getTopRatedMovies() {
+        //given
+        when(reviewReactiveRepository.findTopRatedMovies(10, 1L))
+                .thenReturn(Flux.just(new MovieRating(2L, 3, 9.5), new MovieRating(1L, 5, 8.0)));
+
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/reviews/analytics/top-rated")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieRating.class)
+                .value(movieRatings -> {
+                    assertEquals(2, movieRatings.size());
+                    assertEquals(2L, movieRatings.get(0).getMovieInfoId());
+                });
+    }
 
+    @Test
+    void getTopRatedMovies_InvalidMinReviews() {
+        webTestClient
+                .get()
+                .uri("/v1/reviews/analytics/top-rated?minReviews=-1")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("minReviews : must be a non-negative number");
+    }
+
+    @Test
+    void getReviewStats() {
+        //given
+        var reviewStats = new ReviewStats(1L, 2, 17.0, 8.0, 9.0, Map.of("8", 1L, "9", 1L), 0L);
+        when(reviewStatsReactiveRepository.findById(1L)).thenReturn(Mono.just(reviewStats));
+
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/reviews/stats?movieInfoId=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.average").isEqualTo(8.5)
+                .jsonPath("$.min").isEqualTo(8.0)
+                .jsonPath("$.histogram.9").isEqualTo(1);
+    }
+
+    @Test
+    void rebuildReviewStats() {
+        //given
+        when(reviewStatsReactiveRepository.rebuild(1L))
+                .thenReturn(Mono.just(new ReviewStats(1L, 2, 17.0, 8.0, 9.0, Map.of("8", 1L, "9", 1L), 1L)));
+
+        //when
+        webTestClient
+                .post()
+                .uri("/v1/reviews/stats/rebuild?movieInfoId=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.revision").doesNotExist();
+    }
+
+    @Test
+    void rebuildReviewStats_AllMovies() {
+        //given
+        when(reviewStatsReactiveRepository.rebuildAll()).thenReturn(Mono.just(3L));
+
+        //when
+        webTestClient
+                .post()
+                .uri("/v1/reviews/stats/rebuild")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.movies").isEqualTo(3);
+    }
+
+    @Test
+    void getReviewStats_NoReviews() {
+        //given
+        when(reviewStatsReactiveRepository.findById(2L)).thenReturn(Mono.empty());
+
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/reviews/stats?movieInfoId=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.movieInfoId").isEqualTo(2)
+                .jsonPath("$.count").isEqualTo(0)
+                .jsonPath("$.average").doesNotExist();
     }
 
     @Test
@@ -101,14 +601,117 @@ public class ReviewsUnitTest {
 
     }
 
+    @Test
+    void addReview_InvalidReviewId() {
+        //given
+        var review = new Review("abc", 1L, "Awesome Movie", 9.0);
+        //when
+        webTestClient
+                .post()
+                .uri("/v1/reviews")
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("rating.reviewId : must be left out or a 24 character hex id");
+        verify(reviewReactiveRepository, never()).save(any());
+    }
+
+    @Test
+    void addReviewsBulk() {
+        //given
+        var body = "{\"movieInfoId\":1, \"comment\": \"Awesome Movie\", \"rating\":9.0}\n"
+                + "{\"movieInfoId\":1, \"comment\": \"Awesome Movie1\", \"rating\":-9.0}\n"
+                + "{\"movieInfoId\":2, \"comment\": \"Excellent Movie\", \"rating\":8.0}\n"
+                + "{\"movieInfoId\":2, \"comment\": \"Excellent Movie1\", \"rating\":7.0}\n"
+                + "{\"movieInfoId\":3, \"comment\": \"Good Movie\", \"rating\":6.0}\n";
+        when(reviewReactiveRepository.insert(anyList()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<Review>>getArgument(0)));
+
+        //when
+        webTestClient
+                .post()
+                .uri("/v1/reviews/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ReviewBulkResult.class)
+                .value(result -> {
+                    assertEquals(4, result.getInserted());
+                    assertEquals(1, result.getRejected());
+                    assertEquals(List.of("2 : rating.negative : please pass a non-negative value"), result.getErrors());
+                });
+
+        //then
+        verify(reviewReactiveRepository, times(2)).insert(anyList());
+    }
+
+    @Test
+    void addReviewsBulk_Invalidated() {
+        //given
+        var body = "{\"movieInfoId\":24, \"comment\": \"Awesome Movie\", \"rating\":9.0}\n"
+                + "{\"movieInfoId\":24, \"comment\": \"Awesome Movie1\", \"rating\":8.0}\n"
+                + "{\"movieInfoId\":25, \"comment\": \"Excellent Movie\", \"rating\":8.0}\n";
+        when(reviewReactiveRepository.insert(anyList()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<Review>>getArgument(0)));
+        webTestClient
+                .post()
+                .uri("/v1/reviews/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk();
+
+        //when
+        var reviewStreamFlux = webTestClient
+                .get()
+                .uri("/v1/reviews/stream?movieInfoId=24&fromSeq={fromId}", reviewStreamPublisher.epoch() + "-0")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody();
+
+        //then
+        // one event for the two reviews of movie 24, not the reviews themselves
+        StepVerifier.create(reviewStreamFlux)
+                .assertNext(reviewEvent -> {
+                    assertTrue(reviewEvent.contains("\"type\":\"INVALIDATED\""), reviewEvent);
+                    assertTrue(reviewEvent.contains("\"movieInfoId\":24"), reviewEvent);
+                    assertFalse(reviewEvent.contains("Awesome Movie"), reviewEvent);
+                })
+                .expectNoEvent(Duration.ofMillis(200))
+                .thenCancel()
+                .verify();
+        verify(reviewFeed).append(ReviewEventType.INVALIDATED, new Review(null, 24L, null, null));
+        verify(reviewFeed).append(ReviewEventType.INVALIDATED, new Review(null, 25L, null, null));
+    }
+
+    @Test
+    void addReviewsBulk_Malformed() {
+        //given
+        var body = "{\"movieInfoId\":1, \"comment\": \"Awesome Movie\", \"rating\":9.0}\n"
+                + "{\"movieInfoId\":1, \"comment\": \n";
+
+        //when
+        webTestClient
+                .post()
+                .uri("/v1/reviews/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .value(message -> assertTrue(message.startsWith("line 2 : malformed review"), message));
+    }
+
     @Test
     void updateReview() {
         //given
 
         var reviewUpdate = new Review(null, 1L, "Not an Awesome Movie", 8.0);
 
-        when(reviewReactiveRepository.save(isA(Review.class))).thenReturn(Mono.just(new Review("abc", 1L, "Not an Awesome Movie", 8.0)));
-        when(reviewReactiveRepository.findById((String) any())).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
+        when(reviewReactiveRepository.updateReview(eq("abc"), eq("Not an Awesome Movie"), eq(8.0), any())).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
         doCallRealMethod().when(reviewValidator).validate(any(), any());
         //when
 
@@ -127,15 +730,63 @@ public class ReviewsUnitTest {
                     assertEquals(8.0,updatedReview.getRating());
                     assertEquals("Not an Awesome Movie", updatedReview.getComment());
                 });
+        verify(reviewReactiveRepository, never()).findById((String) any());
+        verify(reviewStatsReactiveRepository).replaceRating(1L, 9.0, 8.0);
+
+    }
 
+    @Test
+    void updateReview_Streamed() {
+        //given
+        var reviewUpdate = new Review(null, 21L, "Not an Awesome Movie", 8.0);
+        when(reviewReactiveRepository.updateReview(eq("upd"), eq("Not an Awesome Movie"), eq(8.0), any())).thenReturn(Mono.just(new Review("upd", 21L, "Awesome Movie", 9.0)));
+        webTestClient
+                .put()
+                .uri("/v1/reviews/{id}", "upd")
+                .bodyValue(reviewUpdate)
+                .exchange()
+                .expectStatus().isOk();
+
+        //when
+        var reviewStreamFlux = webTestClient
+                .get()
+                .uri("/v1/reviews/stream?movieInfoId=21&fromSeq={fromId}", reviewStreamPublisher.epoch() + "-0")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(reviewStreamFlux)
+                .assertNext(reviewEvent -> {
+                    assertTrue(reviewEvent.contains("\"type\":\"UPDATED\""));
+                    assertTrue(reviewEvent.contains("\"comment\":\"Not an Awesome Movie\""));
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void updateReview_NotFound() {
+        //given
+        var reviewUpdate = new Review(null, 1L, "Not an Awesome Movie", 8.0);
+        when(reviewReactiveRepository.updateReview(any(), any(), any(), any())).thenReturn(Mono.empty());
+
+        //when
+        webTestClient
+                .put()
+                .uri("/v1/reviews/{id}", "abc")
+                .bodyValue(reviewUpdate)
+                .exchange()
+                .expectStatus().isNotFound();
     }
 
     @Test
     void deleteReview() {
         //given
         var reviewId= "abc";
-        when(reviewReactiveRepository.findById((String) any())).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
-        when(reviewReactiveRepository.deleteById((String) any())).thenReturn(Mono.empty());
+        when(reviewReactiveRepository.markReview(eq(reviewId), any())).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
+        when(reviewReactiveRepository.removeReview(reviewId)).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
         doCallRealMethod().when(reviewValidator).validate(any(), any());
 
         //when
@@ -144,6 +795,55 @@ public class ReviewsUnitTest {
                 .uri("/v1/reviews/{id}", reviewId)
                 .exchange()
                 .expectStatus().isNoContent();
+        verify(reviewReactiveRepository, never()).findById((String) any());
+        // the review is only removed once its rating is out of the stats, a rebuild in between still sees it marked
+        var inOrder = inOrder(reviewReactiveRepository, reviewStatsReactiveRepository);
+        inOrder.verify(reviewReactiveRepository).markReview(eq(reviewId), any());
+        inOrder.verify(reviewStatsReactiveRepository).replaceRating(1L, 9.0, null);
+        inOrder.verify(reviewReactiveRepository).removeReview(reviewId);
+    }
+
+    @Test
+    void deleteReview_Streamed() {
+        //given
+        when(reviewReactiveRepository.markReview(eq("del"), any())).thenReturn(Mono.just(new Review("del", 22L, "Awesome Movie", 9.0)));
+        when(reviewReactiveRepository.removeReview("del")).thenReturn(Mono.just(new Review("del", 22L, "Awesome Movie", 9.0)));
+        webTestClient
+                .delete()
+                .uri("/v1/reviews/{id}", "del")
+                .exchange()
+                .expectStatus().isNoContent();
+
+        //when
+        var reviewStreamFlux = webTestClient
+                .get()
+                .uri("/v1/reviews/stream?movieInfoId=22&fromSeq={fromId}", reviewStreamPublisher.epoch() + "-0")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(reviewStreamFlux)
+                .assertNext(reviewEvent -> {
+                    assertTrue(reviewEvent.contains("\"type\":\"DELETED\""));
+                    assertTrue(reviewEvent.contains("\"reviewId\":\"del\""));
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void deleteReview_NotFound() {
+        //given
+        when(reviewReactiveRepository.markReview(any(), any())).thenReturn(Mono.empty());
+
+        //when
+        webTestClient
+                .delete()
+                .uri("/v1/reviews/{id}", "abc")
+                .exchange()
+                .expectStatus().isNoContent();
     }
 
 
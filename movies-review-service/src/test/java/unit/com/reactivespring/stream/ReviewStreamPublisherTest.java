@@ -0,0 +1,381 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewStreamPositionException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReviewStreamPublisherTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    Review review(long movieInfoId) {
+        return new Review(String.valueOf(movieInfoId), movieInfoId, "Awesome Movie", 9.0);
+    }
+
+    void publish(ReviewStreamPublisher publisher, int count) {
+        for (long i = 1; i <= count; i++) {
+            publisher.publish(ReviewEventType.ADDED, review(i));
+        }
+    }
+
+    double subscriberBuffer() {
+        return meterRegistry.get("reviews.stream.subscriber.buffer").gauge().value();
+    }
+
+    @Test
+    void subscribe_dropOldest() {
+        //given
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DROP_OLDEST, 2, 1024, meterRegistry, Schedulers.immediate());
+
+        //when
+        StepVerifier.create(publisher.subscribe(), 0)
+                .then(() -> publish(publisher, 5))
+                .then(() -> assertEquals(2, subscriberBuffer()))
+                .thenRequest(2)
+                .assertNext(event -> assertEquals(4L, event.getReview().getMovieInfoId()))
+                .assertNext(event -> assertEquals(5L, event.getReview().getMovieInfoId()))
+                .then(() -> assertEquals(0, subscriberBuffer()))
+                .thenCancel()
+                .verify();
+
+        //then
+        assertEquals(3, meterRegistry.get("reviews.stream.dropped").counter().count());
+    }
+
+    @Test
+    void subscribe_dropNewest() {
+        //given
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DROP_NEWEST, 2, 1024, meterRegistry, Schedulers.immediate());
+
+        //when
+        StepVerifier.create(publisher.subscribe(), 0)
+                .then(() -> publish(publisher, 5))
+                .thenRequest(2)
+                .assertNext(event -> assertEquals(1L, event.getReview().getMovieInfoId()))
+                .assertNext(event -> assertEquals(2L, event.getReview().getMovieInfoId()))
+                .thenCancel()
+                .verify();
+
+        //then
+        assertEquals(3, meterRegistry.get("reviews.stream.dropped").counter().count());
+    }
+
+    @Test
+    void subscribe_disconnect() {
+        //given
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DISCONNECT, 2, 1024, meterRegistry, Schedulers.immediate());
+
+        //when
+        StepVerifier.create(publisher.subscribe(), 0)
+                .then(() -> publish(publisher, 3))
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        //then
+        assertEquals(1, meterRegistry.get("reviews.stream.disconnects").counter().count());
+        assertEquals(0, meterRegistry.get("reviews.stream.subscribers").gauge().value());
+        assertNull(meterRegistry.find("reviews.stream.subscriber.buffer").gauge());
+    }
+
+    @Test
+    void subscribe_slowSubscriberDoesNotStallOthers() {
+        //given
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DROP_OLDEST, 2, 1024, meterRegistry, Schedulers.immediate());
+        // never requests anything
+        var slowSubscriber = publisher.subscribe().subscribeWith(new BaseSubscriber<ReviewEvent>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+            }
+        });
+
+        //when
+        StepVerifier.create(publisher.subscribe())
+                .then(() -> publish(publisher, 5))
+                .expectNextCount(5)
+                .thenCancel()
+                .verify();
+
+        //then
+        slowSubscriber.dispose();
+        assertEquals(3, meterRegistry.get("reviews.stream.dropped").counter().count());
+    }
+
+    @Test
+    void subscribe_movieInfoId() {
+        //given
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DROP_OLDEST, 16, 1024, meterRegistry, Schedulers.immediate());
+
+        //when
+        StepVerifier.create(publisher.subscribe(2L))
+                .then(() -> assertEquals(1, meterRegistry.get("reviews.stream.partitions").gauge().value()))
+                .then(() -> publish(publisher, 3))
+                .assertNext(event -> assertEquals(2L, event.getReview().getMovieInfoId()))
+                .expectNoEvent(Duration.ofMillis(100))
+                .thenCancel()
+                .verify();
+
+        //then
+        // the partition goes away with its last subscriber
+        assertEquals(0, meterRegistry.get("reviews.stream.partitions").gauge().value());
+    }
+
+    @Test
+    void subscribe_movieInfoId_sharedPartition() {
+        //given
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DROP_OLDEST, 16, 1024, meterRegistry, Schedulers.immediate());
+        var first = publisher.subscribe(1L).subscribe();
+
+        //when
+        StepVerifier.create(publisher.subscribe(1L))
+                .then(first::dispose)
+                .then(() -> publish(publisher, 2))
+                .assertNext(event -> assertEquals(1L, event.getReview().getMovieInfoId()))
+                .thenCancel()
+                .verify();
+
+        //then
+        assertEquals(0, meterRegistry.get("reviews.stream.partitions").gauge().value());
+    }
+
+    @Test
+    void resume_fromSeq() {
+        //given
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DROP_OLDEST, 16, 1024, meterRegistry, Schedulers.immediate());
+        publish(publisher, 3);
+
+        //when
+        StepVerifier.create(publisher.resume(null, publisher.epoch() + "-1"))
+                .assertNext(event -> assertEquals(2, event.getSeq()))
+                .assertNext(event -> assertEquals(3, event.getSeq()))
+                .then(() -> publisher.publish(ReviewEventType.ADDED, review(4)))
+                .assertNext(event -> {
+                    assertEquals(4, event.getSeq());
+                    assertEquals(4L, event.getReview().getMovieInfoId());
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void resume_fromSeq_movieInfoId() {
+        //given
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DROP_OLDEST, 16, 1024, meterRegistry, Schedulers.immediate());
+        publish(publisher, 3);
+
+        //when
+        StepVerifier.create(publisher.resume(3L, publisher.epoch() + "-0"))
+                .assertNext(event -> assertEquals(3, event.getSeq()))
+                .then(() -> publish(publisher, 3))
+                .assertNext(event -> assertEquals(6, event.getSeq()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void resume_evicted() {
+        //given
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DROP_OLDEST, 16, 2, meterRegistry, Schedulers.immediate());
+        publish(publisher, 5);
+
+        //when
+        StepVerifier.create(publisher.resume(null, publisher.epoch() + "-2"))
+                .expectError(ReviewStreamPositionException.class)
+                .verify();
+
+        // the 2 latest are still there
+        StepVerifier.create(publisher.resume(null, publisher.epoch() + "-3"))
+                .expectNextCount(2)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void resume_unknownSeq() {
+        //given
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DROP_OLDEST, 16, 1024, meterRegistry, Schedulers.immediate());
+        publish(publisher, 2);
+
+        //when
+        StepVerifier.create(publisher.resume(null, publisher.epoch() + "-10"))
+                .expectError(ReviewStreamPositionException.class)
+                .verify();
+    }
+
+    @Test
+    void resume_otherEpoch() {
+        //given
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DROP_OLDEST, 16, 1024, meterRegistry, Schedulers.immediate());
+        var restarted = new ReviewStreamPublisher(OverflowPolicy.DROP_OLDEST, 16, 1024, meterRegistry, Schedulers.immediate());
+        publish(publisher, 3);
+        publish(restarted, 3);
+
+        //when
+        // same seq, handed out by another instance
+        StepVerifier.create(restarted.resume(null, publisher.epoch() + "-1"))
+                .expectError(ReviewStreamPositionException.class)
+                .verify();
+
+        // no epoch at all
+        StepVerifier.create(restarted.resume(null, "1"))
+                .expectError(ReviewStreamPositionException.class)
+                .verify();
+    }
+
+    @Test
+    void publish_subscriberFailureDoesNotStopTheDrain() {
+        //given
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DROP_OLDEST, 16, 1024, meterRegistry, Schedulers.immediate());
+        // breaks the reactive streams rules, its exception goes all the way up to the drain
+        var failing = new Subscriber<ReviewEvent>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ReviewEvent reviewEvent) {
+                throw new IllegalStateException("Subscriber failure");
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        };
+
+        //when
+        StepVerifier.create(publisher.subscribe())
+                .then(() -> publisher.subscribe().subscribe(failing))
+                .then(() -> publish(publisher, 3))
+                .assertNext(event -> assertEquals(1, event.getSeq()))
+                .assertNext(event -> assertEquals(2, event.getSeq()))
+                .assertNext(event -> assertEquals(3, event.getSeq()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(1));
+
+        //then
+        assertTrue(meterRegistry.get("reviews.stream.emit.failures").counter().count() > 0);
+    }
+
+    @Test
+    void publish_concurrentProducers() throws Exception {
+        //given
+        var producers = 64;
+        var reviewsPerProducer = 2_000;
+        var total = producers * reviewsPerProducer;
+        var drainScheduler = Schedulers.newSingle("review-stream-test");
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DROP_OLDEST, total, 1024, meterRegistry, drainScheduler);
+        var received = new AtomicLong();
+        var lastSeq = new AtomicLong();
+        var outOfOrder = new AtomicLong();
+        // the index of the last review received from each producer, which tags its reviews with its number and index
+        var lastIndex = new AtomicLongArray(producers);
+        IntStream.range(0, producers).forEach(producer -> lastIndex.set(producer, -1));
+        var producerOutOfOrder = new AtomicLong();
+        var drainThreads = ConcurrentHashMap.<String>newKeySet();
+        var subscription = publisher.subscribe().subscribe(event -> {
+            received.incrementAndGet();
+            if (event.getSeq() != lastSeq.get() + 1) {
+                outOfOrder.incrementAndGet();
+            }
+            lastSeq.set(event.getSeq());
+            var producer = event.getReview().getMovieInfoId().intValue();
+            var index = event.getReview().getRating().longValue();
+            if (index != lastIndex.get(producer) + 1) {
+                producerOutOfOrder.incrementAndGet();
+            }
+            lastIndex.set(producer, index);
+            drainThreads.add(Thread.currentThread().getName());
+        });
+        var executor = Executors.newFixedThreadPool(producers);
+        var start = new CountDownLatch(1);
+
+        //when
+        var futures = IntStream.range(0, producers)
+                .mapToObj(producer -> executor.submit(() -> {
+                    start.await();
+                    for (long i = 0; i < reviewsPerProducer; i++) {
+                        publisher.publish(ReviewEventType.ADDED, new Review(producer + "-" + i, (long) producer, null, (double) i));
+                    }
+                    return null;
+                }))
+                .collect(Collectors.toList());
+        start.countDown();
+        for (var future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        // the producers are done once their reviews are queued, the drain catches up on its own thread
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        var pending = meterRegistry.get("reviews.stream.ingress.pending").gauge();
+        while ((received.get() < total || pending.value() > 0) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        subscription.dispose();
+        drainScheduler.dispose();
+
+        //then
+        assertEquals(total, received.get());
+        assertEquals(0, outOfOrder.get());
+        // nothing lost or reordered between what a producer published and what went out
+        assertEquals(0, producerOutOfOrder.get());
+        IntStream.range(0, producers).forEach(producer -> assertEquals(reviewsPerProducer - 1, lastIndex.get(producer)));
+        // one drain thread handed out every review and caught up with all of them
+        assertEquals(1, drainThreads.size());
+        assertTrue(drainThreads.iterator().next().startsWith("review-stream-test"));
+        assertEquals(0, pending.value());
+        assertEquals(0, meterRegistry.get("reviews.stream.emit.failures").counter().count());
+        assertEquals(0, meterRegistry.get("reviews.stream.dropped").counter().count());
+    }
+
+    @Test
+    void publish_slowSubscriberDoesNotHoldThePublisher() {
+        //given
+        var drainScheduler = Schedulers.newSingle("review-stream-test");
+        var publisher = new ReviewStreamPublisher(OverflowPolicy.DROP_OLDEST, 16, 1024, meterRegistry, drainScheduler);
+        var release = new CountDownLatch(1);
+        // blocks the thread that hands it the review, the way a subscriber stuck in its own work would
+        var subscription = publisher.subscribe().subscribe(event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        //when
+        var publishing = Mono.fromRunnable(() -> publish(publisher, 5));
+
+        //then
+        StepVerifier.create(publishing)
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+        release.countDown();
+        subscription.dispose();
+        drainScheduler.dispose();
+    }
+}
@@ -0,0 +1,115 @@
+package com.reactivespring.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.domain.Review;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Per-movie review lists kept fresh by the reviews stream, see {@link ReviewsCacheUpdater}.
+ * <p>
+ * The cache is only used while the stream is connected : reviews added, updated or deleted while it is down would be missed,
+ * so every connect and disconnect clears it and calls go to the network until the stream is back.
+ */
+@Component
+@Slf4j
+public class ReviewsCache {
+
+    private final Cache<String, List<Review>> cache;
+
+    private volatile boolean live;
+
+    // bumped on every invalidation, a load that started before it must not be stored
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypassed;
+
+    public ReviewsCache(@Value("${restClient.reviews.cache.maxSize:10000}") long maxSize,
+                        @Value("${restClient.reviews.cache.expireAfterWrite:10m}") Duration expireAfterWrite,
+                        MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterWrite)
+                .build();
+        this.hits = requestCounter("hit", meterRegistry);
+        this.misses = requestCounter("miss", meterRegistry);
+        this.bypassed = requestCounter("bypass", meterRegistry);
+        Gauge.builder("movies.cache.size", cache, Cache::estimatedSize)
+                .tag("cache", "reviews")
+                .register(meterRegistry);
+        Gauge.builder("movies.cache.live", this, reviewsCache -> reviewsCache.isLive() ? 1 : 0)
+                .tag("cache", "reviews")
+                .register(meterRegistry);
+    }
+
+    public Mono<List<Review>> get(String movieId, Function<String, Mono<List<Review>>> loader) {
+
+        return Mono.defer(() -> {
+            if (!live) {
+                bypassed.increment();
+                return loader.apply(movieId);
+            }
+            var reviews = cache.getIfPresent(movieId);
+            if (reviews != null) {
+                hits.increment();
+                return Mono.just(reviews);
+            }
+            misses.increment();
+            var loadGeneration = generation.get();
+            return loader.apply(movieId)
+                    .doOnNext(loaded -> {
+                        if (live && generation.get() == loadGeneration) {
+                            cache.put(movieId, loaded);
+                        }
+                    });
+        });
+    }
+
+    public boolean isLive() {
+        return live;
+    }
+
+    // added, updated and deleted reviews all carry their movie, and so do the invalidations sent for a bulk insert in
+    // place of its reviews : whatever happened the movie's list is reloaded
+    public void apply(Review review) {
+        log.debug("Invalidating reviews of movie : {}", review.getMovieInfoId());
+        generation.incrementAndGet();
+        cache.invalidate(String.valueOf(review.getMovieInfoId()));
+    }
+
+    public void connected() {
+        log.info("Reviews stream connected, cache enabled");
+        generation.incrementAndGet();
+        cache.invalidateAll();
+        live = true;
+    }
+
+    public void disconnected() {
+        if (live) {
+            log.info("Reviews stream disconnected, cache disabled");
+        }
+        live = false;
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private static Counter requestCounter(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("movies.cache.requests")
+                .tag("cache", "reviews")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
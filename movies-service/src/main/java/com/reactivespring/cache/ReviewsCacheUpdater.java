@@ -0,0 +1,65 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.client.ReviewsRestClient;
+import com.reactivespring.exception.ReviewsServerException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Subscribes to the reviews stream and applies every added, updated and deleted review, and every movie invalidated by a
+ * bulk insert, to the {@link ReviewsCache}.
+ * The stream is reconnected with a backoff whenever it completes or fails.
+ */
+@Component
+@ConditionalOnProperty(name = "restClient.reviews.cache.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class ReviewsCacheUpdater {
+
+    private ReviewsRestClient reviewsRestClient;
+    private ReviewsCache reviewsCache;
+
+    @Value("${restClient.reviews.cache.reconnectMinBackoff:1s}")
+    private Duration reconnectMinBackoff;
+
+    @Value("${restClient.reviews.cache.reconnectMaxBackoff:30s}")
+    private Duration reconnectMaxBackoff;
+
+    private Disposable subscription;
+
+    public ReviewsCacheUpdater(ReviewsRestClient reviewsRestClient, ReviewsCache reviewsCache) {
+        this.reviewsRestClient = reviewsRestClient;
+        this.reviewsCache = reviewsCache;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        subscription = reviewsRestClient.retrieveReviewStream(reviewsCache::connected)
+                .doOnNext(reviewsCache::apply)
+                // a completed stream is reconnected the same way as a failed one
+                .concatWith(Flux.error(new ReviewsServerException("Reviews stream completed")))
+                .doOnError(ex -> log.info("Reviews stream disconnected : {}", ex.getMessage()))
+                // runs for every attempt, nothing may be served from the cache until the stream is back
+                .doFinally(signalType -> reviewsCache.disconnected())
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, reconnectMinBackoff)
+                        .maxBackoff(reconnectMaxBackoff)
+                        .transientErrors(true))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+}
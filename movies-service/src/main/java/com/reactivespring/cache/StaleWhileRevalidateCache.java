@@ -0,0 +1,151 @@
+package com.reactivespring.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Size bounded in-process cache in front of a reactive loader.
+ * <p>
+ * A value is served from the cache for {@code ttl}. During the following {@code staleWhileRevalidate} window the
+ * stale value is still served while a single background refresh runs. Errors matching {@code notFound} are cached
+ * for {@code notFoundTtl} so missing keys don't reach the upstream on every call.
+ */
+@Slf4j
+public class StaleWhileRevalidateCache<K, V> {
+
+    private final Cache<K, Entry<V>> cache;
+
+    private final long ttlNanos;
+    private final long staleWhileRevalidateNanos;
+    private final long notFoundTtlNanos;
+    private final Predicate<Throwable> notFound;
+
+    private final Counter hits;
+    private final Counter staleHits;
+    private final Counter misses;
+    private final Counter refreshes;
+    private final Counter evictions;
+
+    public StaleWhileRevalidateCache(String cacheName, long maxSize, Duration ttl, Duration staleWhileRevalidate,
+                                     Duration notFoundTtl, Predicate<Throwable> notFound, MeterRegistry meterRegistry) {
+        this.ttlNanos = ttl.toNanos();
+        this.staleWhileRevalidateNanos = staleWhileRevalidate.toNanos();
+        this.notFoundTtlNanos = notFoundTtl.toNanos();
+        this.notFound = notFound;
+
+        this.hits = requestCounter(cacheName, "hit", meterRegistry);
+        this.staleHits = requestCounter(cacheName, "stale", meterRegistry);
+        this.misses = requestCounter(cacheName, "miss", meterRegistry);
+        this.refreshes = Counter.builder("movies.cache.refreshes")
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+        this.evictions = Counter.builder("movies.cache.evictions")
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                // entries live until the end of their stale window, freshness is checked on read
+                .expireAfter(new Expiry<K, Entry<V>>() {
+                    @Override
+                    public long expireAfterCreate(K key, Entry<V> entry, long currentTime) {
+                        return entry.lifetimeNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(K key, Entry<V> entry, long currentTime, long currentDuration) {
+                        return entry.lifetimeNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(K key, Entry<V> entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .removalListener((K key, Entry<V> entry, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        evictions.increment();
+                    }
+                })
+                .executor(Runnable::run)
+                .build();
+
+        Gauge.builder("movies.cache.size", cache, Cache::estimatedSize)
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+    }
+
+    public Mono<V> get(K key, Function<K, Mono<V>> loader) {
+
+        return Mono.defer(() -> {
+            var entry = cache.getIfPresent(key);
+            if (entry == null) {
+                misses.increment();
+                return load(key, loader);
+            }
+            if (System.nanoTime() < entry.freshUntil) {
+                hits.increment();
+                return entry.value;
+            }
+            staleHits.increment();
+            if (entry.refreshing.compareAndSet(false, true)) {
+                refreshes.increment();
+                load(key, loader)
+                        // a refresh that failed or came back empty leaves the stale entry, the next read tries again
+                        .doFinally(signal -> entry.refreshing.set(false))
+                        .subscribe(value -> {
+                        }, ex -> log.info("Refresh failed for key : {} , {}", key, ex.getMessage()));
+            }
+            return entry.value;
+        });
+    }
+
+    public void invalidate(K key) {
+        cache.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private Mono<V> load(K key, Function<K, Mono<V>> loader) {
+
+        return loader.apply(key)
+                .doOnNext(value -> cache.put(key, new Entry<>(Mono.just(value), ttlNanos, staleWhileRevalidateNanos)))
+                .doOnError(notFound, ex -> cache.put(key, new Entry<>(Mono.error(ex), notFoundTtlNanos, 0)));
+    }
+
+    private static Counter requestCounter(String cacheName, String result, MeterRegistry meterRegistry) {
+        return Counter.builder("movies.cache.requests")
+                .tag("cache", cacheName)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static class Entry<V> {
+
+        // built once, so a hit doesn't allocate a new publisher
+        private final Mono<V> value;
+        private final long freshUntil;
+        private final long lifetimeNanos;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(Mono<V> value, long ttlNanos, long staleWhileRevalidateNanos) {
+            this.value = value;
+            this.freshUntil = System.nanoTime() + ttlNanos;
+            this.lifetimeNanos = ttlNanos + staleWhileRevalidateNanos;
+        }
+    }
+}
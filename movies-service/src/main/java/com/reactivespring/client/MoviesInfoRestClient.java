@@ -1,17 +1,26 @@
 package com.reactivespring.client;
 
+import com.reactivespring.cache.StaleWhileRevalidateCache;
 import com.reactivespring.domain.MovieInfo;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.util.HedgingUtil;
+import com.reactivespring.util.RequestCoalescer;
+import com.reactivespring.util.ResilienceUtil;
 import com.reactivespring.util.RetryUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.BufferOverflowStrategy;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
@@ -20,17 +29,57 @@ import java.time.Duration;
 @Slf4j
 public class MoviesInfoRestClient {
 
+    private static final String CLIENT_NAME = "moviesInfo";
+
     private WebClient webClient;
 
+    private RequestCoalescer<String, MovieInfo> movieInfoCoalescer;
+
+    private StaleWhileRevalidateCache<String, MovieInfo> movieInfoCache;
+
+    private RetryUtil retryUtil;
+
+    private ResilienceUtil resilienceUtil;
+
+    private HedgingUtil hedgingUtil;
+
+    // one upstream subscription shared by every local subscriber of the stream
+    private Flux<MovieInfo> movieInfoStream;
+
+    private int streamBufferSize;
+
+    private Counter streamDropped;
+
     @Value("${restClient.moviesInfoUrl}")
     private String moviesInfoUrl;
 
-    public MoviesInfoRestClient(WebClient webClient) {
+    public MoviesInfoRestClient(@Qualifier("moviesInfoWebClient") WebClient webClient, StaleWhileRevalidateCache<String, MovieInfo> movieInfoCache, RetryUtil retryUtil, ResilienceUtil resilienceUtil, HedgingUtil hedgingUtil, MeterRegistry meterRegistry,
+                                @Value("${restClient.moviesInfo.stream.bufferSize:256}") int streamBufferSize,
+                                @Value("${restClient.moviesInfo.stream.gracePeriod:5s}") Duration streamGracePeriod) {
         this.webClient = webClient;
+        this.movieInfoCache = movieInfoCache;
+        this.retryUtil = retryUtil;
+        this.resilienceUtil = resilienceUtil;
+        this.hedgingUtil = hedgingUtil;
+        this.movieInfoCoalescer = new RequestCoalescer<>(CLIENT_NAME, meterRegistry);
+        this.streamBufferSize = streamBufferSize;
+        this.streamDropped = Counter.builder("movies.client.stream.dropped")
+                .tag("client", CLIENT_NAME)
+                .register(meterRegistry);
+        // connects with the first subscriber, disconnects once the last one has been gone for the grace period
+        this.movieInfoStream = Flux.defer(this::fetchMovieInfoStream)
+                .publish()
+                .refCount(1, streamGracePeriod);
     }
 
     public Mono<MovieInfo> retrieveMovieInfo(String movieId) {
 
+        return movieInfoCache.get(movieId, id -> movieInfoCoalescer.execute(id, () -> fetchMovieInfo(id)));
+
+    }
+
+    private Mono<MovieInfo> fetchMovieInfo(String movieId) {
+
         var url = moviesInfoUrl.concat("/{id}");
         /*var retrySpec = RetrySpec.fixedDelay(3, Duration.ofSeconds(1))
                 .filter((ex) -> ex instanceof MoviesInfoServerException)
@@ -53,15 +102,29 @@ public class MoviesInfoRestClient {
                             .flatMap(response -> Mono.error(new MoviesInfoServerException(response)));
                 }))
                 .bodyToMono(MovieInfo.class)
+                .timeout(retryUtil.timeout(CLIENT_NAME))
+                .transform(resilienceUtil.protect(CLIENT_NAME))
+                .transform(hedgingUtil.hedge(CLIENT_NAME))
                //.retry(3)
                 //.retryWhen(Retry.fixedDelay(3, Duration.ofMillis(500)))
-                .retryWhen(RetryUtil.retrySpec())
+                .retryWhen(retryUtil.retrySpec(CLIENT_NAME))
                 .log();
 
     }
 
     public Flux<MovieInfo> retrieveMovieInfoStream() {
 
+        // publish() goes at the pace of its slowest subscriber, the buffer keeps a slow one from stalling the others
+        return movieInfoStream
+                .onBackpressureBuffer(streamBufferSize, movieInfo -> {
+                    log.info("Stream subscriber too slow, dropping movie info : {}", movieInfo.getMovieInfoId());
+                    streamDropped.increment();
+                }, BufferOverflowStrategy.DROP_OLDEST);
+
+    }
+
+    private Flux<MovieInfo> fetchMovieInfoStream() {
+
         var url = moviesInfoUrl.concat("/stream");
         /*var retrySpec = RetrySpec.fixedDelay(3, Duration.ofSeconds(1))
                 .filter((ex) -> ex instanceof MoviesInfoServerException)
@@ -69,6 +132,8 @@ public class MoviesInfoRestClient {
 
         return webClient.get()
                 .uri(url)
+                // the stream stays quiet until a movie info is added
+                .httpRequest(httpRequest -> httpRequest.<HttpClientRequest>getNativeRequest().responseTimeout(null))
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, (clientResponse -> {
                     log.info("Status code : {}", clientResponse.statusCode().value());
@@ -82,7 +147,7 @@ public class MoviesInfoRestClient {
                 }))
                 .bodyToFlux(MovieInfo.class)
                 //.retry(3)
-                .retryWhen(RetryUtil.retrySpec())
+                .retryWhen(retryUtil.retrySpec(CLIENT_NAME))
                 .log();
 
     }
@@ -105,7 +170,9 @@ public class MoviesInfoRestClient {
                                     .flatMap(response -> Mono.error(new MoviesInfoServerException(response)));
                     }
                 })
-                .retryWhen(RetryUtil.retrySpec())
+                .timeout(retryUtil.timeout(CLIENT_NAME))
+                .transform(resilienceUtil.protect(CLIENT_NAME))
+                .retryWhen(retryUtil.retrySpec(CLIENT_NAME))
                 .log();
 
     }
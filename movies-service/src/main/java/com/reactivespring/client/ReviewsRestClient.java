@@ -1,29 +1,64 @@
 package com.reactivespring.client;
 
+import com.reactivespring.cache.ReviewsCache;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewRating;
+import com.reactivespring.domain.ReviewStats;
 import com.reactivespring.exception.ReviewsClientException;
 import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.util.RequestCoalescer;
+import com.reactivespring.util.ResilienceUtil;
 import com.reactivespring.util.RetryUtil;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 @Component
 @Slf4j
 public class ReviewsRestClient {
 
+    private static final String CLIENT_NAME = "reviews";
+
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private WebClient webClient;
 
+    private RequestCoalescer<String, List<Review>> reviewsCoalescer;
+
+    private ReviewsCache reviewsCache;
+
+    private RetryUtil retryUtil;
+
+    private ResilienceUtil resilienceUtil;
+
     @Value("${restClient.reviewsUrl}")
     private String reviewsUrl;
 
-    public ReviewsRestClient(WebClient webClient) {
+    public ReviewsRestClient(@Qualifier("reviewsWebClient") WebClient webClient, ReviewsCache reviewsCache, RetryUtil retryUtil, ResilienceUtil resilienceUtil, MeterRegistry meterRegistry) {
         this.webClient = webClient;
+        this.reviewsCache = reviewsCache;
+        this.retryUtil = retryUtil;
+        this.resilienceUtil = resilienceUtil;
+        this.reviewsCoalescer = new RequestCoalescer<>(CLIENT_NAME, meterRegistry);
     }
 
     public Flux<Review> retrieveReviews(String movieId){
@@ -32,14 +67,49 @@ public class ReviewsRestClient {
                 .queryParam("movieInfoId", movieId)
                 .buildAndExpand().toString();
 
+        // the cache lookup is part of the shared call, so a load keeps filling the cache when callers cancel
+        return reviewsCoalescer.execute(movieId, () -> reviewsCache.get(movieId, id -> retrieveReviewList(url)))
+                .flatMapIterable(Function.identity());
+
+    }
+
+    public Flux<Review> retrieveReviewRatings(String movieId){
+
+        // the reviews service only reads and sends these fields, comments can be large
+        var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .queryParam("movieInfoId", movieId)
+                .queryParam("fields", "reviewId,rating")
+                .buildAndExpand().toString();
+
+        return retrieveReviewList(url)
+                .flatMapIterable(Function.identity())
+                .map(review -> new ReviewRating(review.getReviewId(), review.getRating()));
+
+    }
+
+    public Flux<Review> retrieveReviews(Collection<String> movieIds){
+
+        var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .queryParam("movieInfoIds", String.join(",", movieIds))
+                .buildAndExpand().toString();
+
+        return retrieveReviewList(url)
+                .flatMapIterable(Function.identity());
+
+    }
+
+    public Mono<ReviewStats> retrieveReviewStats(String movieId){
+
+        var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .path("/stats")
+                .queryParam("movieInfoId", movieId)
+                .buildAndExpand().toString();
+
         return webClient.get()
                 .uri(url)
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, (clientResponse -> {
                     log.info("Status code : {}", clientResponse.statusCode().value());
-                    if(clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)){
-                        return Mono.empty();
-                    }
                     return clientResponse.bodyToMono(String.class)
                             .flatMap(response -> Mono.error(new ReviewsClientException(response)));
                 }))
@@ -48,12 +118,119 @@ public class ReviewsRestClient {
                     return clientResponse.bodyToMono(String.class)
                             .flatMap(response -> Mono.error(new ReviewsServerException(response)));
                 }))
-                .bodyToFlux(Review.class)
-                .retryWhen(RetryUtil.retrySpec());
+                .bodyToMono(ReviewStats.class)
+                .timeout(retryUtil.timeout(CLIENT_NAME))
+                .transform(resilienceUtil.protect(CLIENT_NAME))
+                .retryWhen(retryUtil.retrySpec(CLIENT_NAME));
+
+    }
+
+    public Flux<Review> retrieveReviewStream(Runnable onConnected){
+
+        var url = reviewsUrl.concat("/stream");
+
+        return webClient.get()
+                .uri(url)
+                .accept(MediaType.APPLICATION_NDJSON)
+                // the stream stays quiet until a review is written, only the connection dropping ends it
+                .httpRequest(httpRequest -> httpRequest.<HttpClientRequest>getNativeRequest().responseTimeout(null))
+                .exchangeToFlux(clientResponse -> {
+                    if (clientResponse.statusCode().is2xxSuccessful()) {
+                        onConnected.run();
+                    }
+                    return toReviews(clientResponse);
+                });
+
+    }
+
+    public Flux<Review> retrieveReviewsStream(String movieId){
+
+        return Flux.defer(() -> {
+            // a retry asks for the reviews after the last one passed on, nothing is repeated or skipped
+            var lastReviewId = new AtomicReference<String>();
+            return Flux.defer(() -> webClient.get()
+                            .uri(reviewsStreamUrl(movieId, lastReviewId.get()))
+                            .accept(MediaType.APPLICATION_NDJSON)
+                            .exchangeToFlux(this::toReviews))
+                    .doOnNext(review -> lastReviewId.set(review.getReviewId()))
+                    .retryWhen(retryUtil.retrySpec(CLIENT_NAME));
+        });
+
+    }
+
+    private String reviewsStreamUrl(String movieId, String after){
+
+        var uriBuilder = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .queryParam("movieInfoId", movieId);
+        if (after != null) {
+            uriBuilder.queryParam("after", after);
+        }
+        return uriBuilder.buildAndExpand().toString();
 
     }
 
+    private Flux<Review> toReviews(ClientResponse clientResponse){
+
+        log.info("Status code : {}", clientResponse.statusCode().value());
+        if (clientResponse.statusCode().is2xxSuccessful()) {
+            // decoded line by line, the next lines are only read from the connection once these are consumed
+            return clientResponse.bodyToFlux(Review.class);
+        }
+        if (clientResponse.statusCode().is4xxClientError()) {
+            return clientResponse.bodyToMono(String.class)
+                    .defaultIfEmpty(clientResponse.statusCode().getReasonPhrase())
+                    .flatMapMany(response -> Flux.error(new ReviewsClientException(response)));
+        }
+        return clientResponse.bodyToMono(String.class)
+                .defaultIfEmpty(clientResponse.statusCode().getReasonPhrase())
+                .flatMapMany(response -> Flux.error(new ReviewsServerException(response)));
+
+    }
+
+    private Mono<List<Review>> retrieveReviewList(String url){
+
+        // a movie with more reviews than one page is read page by page, each page asks for the reviews after the last one
+        return retrieveReviewPage(url)
+                .expand(reviewPage -> Optional.ofNullable(reviewPage.getHeaders().getFirst(NEXT_CURSOR_HEADER))
+                        .map(cursor -> retrieveReviewPage(nextPageUrl(url, cursor)))
+                        .orElse(Mono.empty()))
+                .flatMapIterable(HttpEntity::getBody)
+                .collectList();
+
+    }
+
+    private String nextPageUrl(String url, String cursor){
+
+        return UriComponentsBuilder.fromHttpUrl(url)
+                .replaceQueryParam("after", cursor)
+                .buildAndExpand().toString();
 
+    }
 
+    private Mono<ResponseEntity<List<Review>>> retrieveReviewPage(String url){
 
+        return webClient.get()
+                .uri(url)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, (clientResponse -> {
+                    log.info("Status code : {}", clientResponse.statusCode().value());
+                    if(clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)){
+                        // Mono.empty() here would decode the 404 body as reviews
+                        return clientResponse.createException();
+                    }
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(response -> Mono.error(new ReviewsClientException(response)));
+                }))
+                .onStatus(HttpStatus::is5xxServerError, (clientResponse -> {
+                    log.info("Status code : {}", clientResponse.statusCode().value());
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(response -> Mono.error(new ReviewsServerException(response)));
+                }))
+                .toEntityList(Review.class)
+                .onErrorResume(WebClientResponseException.NotFound.class, ex -> Mono.just(ResponseEntity.ok(List.of())))
+                .timeout(retryUtil.timeout(CLIENT_NAME))
+                .transform(resilienceUtil.protect(CLIENT_NAME))
+                .retryWhen(retryUtil.retrySpec(CLIENT_NAME));
+
+    }
 }
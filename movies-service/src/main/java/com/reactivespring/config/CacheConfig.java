@@ -0,0 +1,29 @@
+package com.reactivespring.config;
+
+import com.reactivespring.cache.StaleWhileRevalidateCache;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.MoviesInfoClientException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    public StaleWhileRevalidateCache<String, MovieInfo> movieInfoCache(
+            @Value("${restClient.moviesInfo.cache.maxSize:10000}") long maxSize,
+            @Value("${restClient.moviesInfo.cache.ttl:5m}") Duration ttl,
+            @Value("${restClient.moviesInfo.cache.staleWhileRevalidate:1m}") Duration staleWhileRevalidate,
+            @Value("${restClient.moviesInfo.cache.notFoundTtl:10s}") Duration notFoundTtl,
+            MeterRegistry meterRegistry) {
+        return new StaleWhileRevalidateCache<>("movieInfo", maxSize, ttl, staleWhileRevalidate, notFoundTtl,
+                ex -> ex instanceof MoviesInfoClientException
+                        && ((MoviesInfoClientException) ex).getStatusCode() == HttpStatus.NOT_FOUND.value(),
+                meterRegistry);
+    }
+}
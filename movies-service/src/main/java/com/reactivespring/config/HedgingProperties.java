@@ -0,0 +1,41 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "restclient.hedging")
+public class HedgingProperties {
+
+    private Budget budget = new Budget();
+
+    // keyed by client name, clients without an entry are not hedged
+    private Map<String, Policy> policies = new HashMap<>();
+
+    public Policy policy(String clientName) {
+        return policies.getOrDefault(clientName, new Policy());
+    }
+
+    @Data
+    public static class Policy {
+        private boolean enabled = false;
+        // the hedge goes out once the first attempt is slower than this share of the recent calls
+        private double percentile = 0.95;
+        private Duration minDelay = Duration.ofMillis(20);
+        private Duration maxDelay = Duration.ofSeconds(1);
+        // no hedging until the percentile is backed by enough calls within the last 40s
+        private long minSamples = 20;
+    }
+
+    @Data
+    public static class Budget {
+        // hedges earned by every request, 0.05 caps hedges to 5% of the traffic
+        private double ratio = 0.05;
+        // hedges that can be spent before any traffic was seen
+        private int minHedges = 5;
+    }
+}
@@ -0,0 +1,104 @@
+package com.reactivespring.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.resolver.AddressResolverGroup;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.ConnectionObserver;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.transport.TransportConfig;
+
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Connection pool of one downstream, exporting the time spent waiting for a connection and the pool occupancy
+ * as {@code movies.client.pool.*} meters tagged with the client name.
+ */
+public class MeteredConnectionProvider implements ConnectionProvider {
+
+    private final ConnectionProvider delegate;
+    private final Timer acquireTimer;
+
+    public MeteredConnectionProvider(String clientName, WebClientProperties.Client properties, MeterRegistry meterRegistry) {
+        this.delegate = ConnectionProvider.builder(clientName)
+                .maxConnections(properties.getMaxConnections())
+                .pendingAcquireMaxCount(properties.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(properties.getPendingAcquireTimeout())
+                .maxIdleTime(properties.getMaxIdleTime())
+                .maxLifeTime(properties.getMaxLifeTime())
+                .evictInBackground(properties.getEvictInBackground())
+                .metrics(true, () -> (poolName, id, remoteAddress, metrics) ->
+                        registerPoolGauges(clientName, remoteAddress, metrics, meterRegistry))
+                .build();
+        this.acquireTimer = Timer.builder("movies.client.pool.acquire")
+                .tag("client", clientName)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<? extends Connection> acquire(TransportConfig config, ConnectionObserver connectionObserver,
+                                              Supplier<? extends SocketAddress> remoteAddress, AddressResolverGroup<?> resolverGroup) {
+        // emits once the connection is ready to use, a new connection includes the connect time
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            return delegate.acquire(config, connectionObserver, remoteAddress, resolverGroup)
+                    .doOnSuccess(connection -> acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(ex -> acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    @Override
+    public void disposeWhen(SocketAddress remoteAddress) {
+        delegate.disposeWhen(remoteAddress);
+    }
+
+    @Override
+    public void dispose() {
+        delegate.dispose();
+    }
+
+    @Override
+    public Mono<Void> disposeLater() {
+        return delegate.disposeLater();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return delegate.isDisposed();
+    }
+
+    @Override
+    public int maxConnections() {
+        return delegate.maxConnections();
+    }
+
+    @Override
+    public Map<SocketAddress, Integer> maxConnectionsPerHost() {
+        return delegate.maxConnectionsPerHost();
+    }
+
+    private static void registerPoolGauges(String clientName, SocketAddress remoteAddress, ConnectionPoolMetrics metrics, MeterRegistry meterRegistry) {
+        var address = String.valueOf(remoteAddress);
+        poolGauge("movies.client.pool.pending", clientName, address, metrics, ConnectionPoolMetrics::pendingAcquireSize, meterRegistry);
+        poolGauge("movies.client.pool.active", clientName, address, metrics, ConnectionPoolMetrics::acquiredSize, meterRegistry);
+        poolGauge("movies.client.pool.idle", clientName, address, metrics, ConnectionPoolMetrics::idleSize, meterRegistry);
+        poolGauge("movies.client.pool.allocated", clientName, address, metrics, ConnectionPoolMetrics::allocatedSize, meterRegistry);
+    }
+
+    private static void poolGauge(String name, String clientName, String address, ConnectionPoolMetrics metrics,
+                                  ToIntFunction<ConnectionPoolMetrics> value, MeterRegistry meterRegistry) {
+        Gauge.builder(name, metrics, m -> value.applyAsInt(m))
+                .tag("client", clientName)
+                .tag("remote.address", address)
+                // the pool only hands out this view, nothing else keeps it reachable
+                .strongReference(true)
+                .register(meterRegistry);
+    }
+}
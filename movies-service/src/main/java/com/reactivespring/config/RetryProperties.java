@@ -0,0 +1,39 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "restclient.retry")
+public class RetryProperties {
+
+    private Budget budget = new Budget();
+
+    // keyed by client name, clients without an entry get the defaults below
+    private Map<String, Policy> policies = new HashMap<>();
+
+    public Policy policy(String clientName) {
+        return policies.getOrDefault(clientName, new Policy());
+    }
+
+    @Data
+    public static class Policy {
+        private long maxRetries = 3;
+        private Duration minBackoff = Duration.ofMillis(100);
+        private Duration maxBackoff = Duration.ofSeconds(2);
+        private double jitter = 0.5;
+        private Duration timeout = Duration.ofSeconds(3);
+    }
+
+    @Data
+    public static class Budget {
+        // retries earned by every request, 0.2 caps retries to 20% of the traffic
+        private double ratio = 0.2;
+        // retries that can be spent before any traffic was seen
+        private int minRetries = 10;
+    }
+}
@@ -1,14 +1,63 @@
 package com.reactivespring.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Configuration
 public class WebClientConfig {
 
+    private WebClientProperties webClientProperties;
+    private MeterRegistry meterRegistry;
+
+    private List<ConnectionProvider> connectionProviders = new CopyOnWriteArrayList<>();
+
+    public WebClientConfig(WebClientProperties webClientProperties, MeterRegistry meterRegistry) {
+        this.webClientProperties = webClientProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Bean
+    public WebClient moviesInfoWebClient(WebClient.Builder builder) {
+        return webClient(builder, "moviesInfo");
+    }
+
     @Bean
-    public WebClient webClient(WebClient.Builder builder) {
-        return builder.build();
+    public WebClient reviewsWebClient(WebClient.Builder builder) {
+        return webClient(builder, "reviews");
+    }
+
+    // one pool per downstream, so a slow one can't hold the connections of the other
+    private WebClient webClient(WebClient.Builder builder, String clientName) {
+        var properties = webClientProperties.client(clientName);
+        var connectionProvider = new MeteredConnectionProvider(clientName, properties, meterRegistry);
+        connectionProviders.add(connectionProvider);
+
+        var httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.getConnectTimeout().toMillis())
+                .responseTimeout(properties.getResponseTimeout())
+                .compress(properties.isCompress());
+        if (properties.isH2c()) {
+            httpClient = httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+
+        return builder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    @PreDestroy
+    public void disposeConnectionProviders() {
+        connectionProviders.forEach(ConnectionProvider::dispose);
     }
 }
@@ -0,0 +1,37 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "restclient.http")
+public class WebClientProperties {
+
+    // keyed by client name, clients without an entry get the defaults below
+    private Map<String, Client> clients = new HashMap<>();
+
+    public Client client(String clientName) {
+        return clients.getOrDefault(clientName, new Client());
+    }
+
+    @Data
+    public static class Client {
+        private int maxConnections = 50;
+        // requests allowed to wait for a connection, the next one fails right away
+        private int pendingAcquireMaxCount = 100;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictInBackground = Duration.ofSeconds(30);
+        private Duration connectTimeout = Duration.ofSeconds(1);
+        // longest silence allowed while reading a response, streams opt out per request
+        private Duration responseTimeout = Duration.ofSeconds(3);
+        // HTTP/2 over cleartext, with HTTP/1.1 kept for downstreams that don't upgrade
+        private boolean h2c = false;
+        private boolean compress = true;
+    }
+}
@@ -4,36 +4,107 @@ import com.reactivespring.client.MoviesInfoRestClient;
 import com.reactivespring.client.ReviewsRestClient;
 import com.reactivespring.domain.Movie;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.MoviesInfoClientException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebInputException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
 @RestController
 @RequestMapping("/v1/movies")
+@Slf4j
 public class MoviesController {
 
     private MoviesInfoRestClient moviesInfoRestClient;
     private ReviewsRestClient reviewsRestClient;
 
+    @Value("${movies.batch.concurrency:8}")
+    private int batchConcurrency;
+
+    @Value("${movies.reviews.latencyBudget:1s}")
+    private Duration reviewsLatencyBudget;
+
     public MoviesController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient) {
         this.moviesInfoRestClient = moviesInfoRestClient;
         this.reviewsRestClient = reviewsRestClient;
     }
 
     @GetMapping("/{id}")
-    public Mono<Movie> retrieveMovieById(@PathVariable("id") String movieId){
+    public Mono<Movie> retrieveMovieById(@PathVariable("id") String movieId,
+                                         @RequestParam(value = "view", defaultValue = "full") String view){
 
-        return moviesInfoRestClient.retrieveMovieInfo(movieId)
-                //moviesInfoRestClient.retrieveMovieInfo_exchange(movieId)
-                .flatMap(movieInfo -> {
-                    var reviewList = reviewsRestClient.retrieveReviews(movieId)
-                            .collectList();
-                   return reviewList.map(reviews -> new Movie(movieInfo, reviews));
-                });
+        // the summary view carries the rating stats the reviews service keeps instead of every review,
+        // the ratings view every review with its rating only
+        switch (view) {
+            case "summary":
+                return retrieveMovieSummary(movieId);
+            case "ratings":
+                return retrieveMovie(movieId, reviewsRestClient.retrieveReviewRatings(movieId));
+            case "full":
+                return retrieveMovie(movieId, reviewsRestClient.retrieveReviews(movieId));
+            default:
+                // a misspelled view would otherwise quietly get the full one
+                return Mono.error(new ServerWebInputException("view : must be one of full, summary, ratings"));
+        }
+
+    }
+
+    @GetMapping(value = "/{id}/reviews", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Review> retrieveReviewsByMovieId(@PathVariable("id") String movieId){
+
+        // passed through as they arrive, a slow client slows down the reads from the reviews service
+        return reviewsRestClient.retrieveReviewsStream(movieId);
+
+    }
+
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Movie> retrieveMoviesByIds(@RequestParam("ids") List<String> movieIds){
+
+        return retrieveMovies(movieIds);
+
+    }
+
+    @PostMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Movie> retrieveMovies(@RequestBody List<String> movieIds){
+
+        var distinctMovieIds = movieIds.stream()
+                .distinct()
+                .collect(Collectors.toList());
+
+        // one reviews call for the whole batch, shared by every movie
+        var reviewsByMovieId = reviewsRestClient.retrieveReviews(distinctMovieIds)
+                .collectMultimap(review -> String.valueOf(review.getMovieInfoId()))
+                .cache();
+
+        return Flux.fromIterable(distinctMovieIds)
+                // movies are emitted as soon as they are aggregated, not in the requested order
+                .flatMap(movieId -> moviesInfoRestClient.retrieveMovieInfo(movieId)
+                        .onErrorResume(MoviesInfoClientException.class, ex -> {
+                            if (ex.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+                                log.info("Skipping movie not found in batch : {}", movieId);
+                                return Mono.empty();
+                            }
+                            return Mono.error(ex);
+                        })
+                        .zipWith(reviewsByMovieId, (movieInfo, reviews) ->
+                                new Movie(movieInfo, new ArrayList<>(reviews.getOrDefault(movieId, List.of())))), batchConcurrency);
 
     }
 
@@ -43,4 +114,38 @@ public class MoviesController {
         return moviesInfoRestClient.retrieveMovieInfoStream();
 
     }
+
+    private Mono<Movie> retrieveMovie(String movieId, Flux<Review> movieReviews){
+
+        // both calls are subscribed at once, an error from either side cancels the other one
+        var movieInfo = moviesInfoRestClient.retrieveMovieInfo(movieId);
+                //moviesInfoRestClient.retrieveMovieInfo_exchange(movieId)
+        var reviewList = movieReviews
+                .collectList()
+                .map(Optional::of)
+                // past the budget the movie goes out without reviews, the shared reviews call keeps warming the cache
+                .timeout(reviewsLatencyBudget, Mono.fromSupplier(() -> {
+                    log.info("Reviews latency budget exceeded for movie : {}", movieId);
+                    return Optional.empty();
+                }));
+
+        return Mono.zip(movieInfo, reviewList, (info, reviews) ->
+                new Movie(info, reviews.orElse(List.of()), reviews.isEmpty()));
+
+    }
+
+    private Mono<Movie> retrieveMovieSummary(String movieId){
+
+        var movieInfo = moviesInfoRestClient.retrieveMovieInfo(movieId);
+        var reviewStats = reviewsRestClient.retrieveReviewStats(movieId)
+                .map(Optional::of)
+                .timeout(reviewsLatencyBudget, Mono.fromSupplier(() -> {
+                    log.info("Reviews latency budget exceeded for movie summary : {}", movieId);
+                    return Optional.empty();
+                }));
+
+        return Mono.zip(movieInfo, reviewStats, (info, stats) ->
+                new Movie(info, null, stats.orElse(null), stats.isEmpty()));
+
+    }
 }
@@ -1,6 +1,7 @@
 package com.reactivespring.domain;
 
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,5 +14,20 @@ import java.util.List;
 public class Movie {
 
     private MovieInfo movieInfo;
+    // left out of the summary view
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<Review> reviewList;
+    // only in the summary view, in place of the reviews
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ReviewStats reviewStats;
+    // true when the reviews didn't make it within the latency budget and reviewList or reviewStats is missing
+    private boolean degraded;
+
+    public Movie(MovieInfo movieInfo, List<Review> reviewList) {
+        this(movieInfo, reviewList, false);
+    }
+
+    public Movie(MovieInfo movieInfo, List<Review> reviewList, boolean degraded) {
+        this(movieInfo, reviewList, null, degraded);
+    }
 }
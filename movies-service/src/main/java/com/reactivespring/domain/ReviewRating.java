@@ -0,0 +1,17 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.NoArgsConstructor;
+
+/**
+ * A review of the ratings view, written with its id and rating only. The other views write every review field,
+ * null or not.
+ */
+@NoArgsConstructor
+@JsonIgnoreProperties({"movieInfoId", "comment"})
+public class ReviewRating extends Review {
+
+    public ReviewRating(String reviewId, Double rating) {
+        super(reviewId, null, null, rating);
+    }
+}
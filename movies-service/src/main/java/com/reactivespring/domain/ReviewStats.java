@@ -0,0 +1,20 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewStats {
+
+    private Long movieInfoId;
+    private long count;
+    private Double average;
+    private Double min;
+    private Double max;
+    private Map<String, Long> histogram;
+}
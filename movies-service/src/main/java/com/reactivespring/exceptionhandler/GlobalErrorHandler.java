@@ -1,11 +1,14 @@
 package com.reactivespring.exceptionhandler;
 
 import com.reactivespring.exception.MoviesInfoClientException;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.server.ServerWebInputException;
 
 @ControllerAdvice
 @Slf4j
@@ -18,6 +21,18 @@ public class GlobalErrorHandler {
         return ResponseEntity.status(HttpStatus.valueOf(ex.getStatusCode())).body(ex.getMessage());
     }
 
+    @ExceptionHandler({CallNotPermittedException.class, BulkheadFullException.class})
+    public ResponseEntity<String> handleRejectedCall(RuntimeException ex){
+        log.error("Call rejected in handleRejectedCall :  {} " ,ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(ServerWebInputException.class)
+    public ResponseEntity<String> handleInputException(ServerWebInputException ex){
+        log.info("Invalid request in handleInputException :  {} " ,ex.getReason());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getReason());
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<String> handleRuntimeException(RuntimeException ex){
         log.error("Exception caught in handleClientException :  {} " ,ex.getMessage(),  ex);
@@ -0,0 +1,145 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.HedgingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Hedged requests per downstream, configured under {@code restClient.hedging.policies} with the client name as key.
+ * Only meant for idempotent calls : the call is subscribed a second time when the first attempt is slower than the
+ * configured percentile of the recent calls, the first one to answer wins and the other one is cancelled.
+ */
+@Component
+@Slf4j
+public class HedgingUtil {
+
+    private static final Duration LATENCY_WINDOW = Duration.ofMinutes(1);
+    private static final int LATENCY_BUFFERS = 3;
+
+    private HedgingProperties hedgingProperties;
+    private MeterRegistry meterRegistry;
+
+    // shared by every client, same as the retry budget, so hedging can't double the load during an incident
+    private RetryBudget hedgingBudget;
+
+    private Map<String, Hedger> hedgers = new ConcurrentHashMap<>();
+
+    public HedgingUtil(HedgingProperties hedgingProperties, MeterRegistry meterRegistry) {
+        this.hedgingProperties = hedgingProperties;
+        this.meterRegistry = meterRegistry;
+        this.hedgingBudget = new RetryBudget(hedgingProperties.getBudget().getRatio(), hedgingProperties.getBudget().getMinHedges());
+        Gauge.builder("movies.client.hedging.budget", hedgingBudget, RetryBudget::available)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Applied outside {@link ResilienceUtil#protect(String)} and inside the retry : each attempt goes through the
+     * bulkhead and the circuit breaker on its own, and the retry sees a single call.
+     */
+    public <T> Function<Mono<T>, Mono<T>> hedge(String clientName) {
+        var policy = hedgingProperties.policy(clientName);
+        if (!policy.isEnabled()) {
+            return Function.identity();
+        }
+        var hedger = hedgers.computeIfAbsent(clientName, name -> new Hedger(name, policy));
+        return hedger::hedge;
+    }
+
+    private class Hedger {
+
+        private final String clientName;
+        private final HedgingProperties.Policy policy;
+        private final Timer latency;
+        private final RollingCounter samples;
+        private final Counter sent;
+        private final Counter won;
+        private final Counter suppressed;
+
+        Hedger(String clientName, HedgingProperties.Policy policy) {
+            this.clientName = clientName;
+            this.policy = policy;
+            this.latency = Timer.builder("movies.client.hedging.latency")
+                    .tag("client", clientName)
+                    .publishPercentiles(policy.getPercentile())
+                    .distributionStatisticExpiry(LATENCY_WINDOW)
+                    .distributionStatisticBufferLength(LATENCY_BUFFERS)
+                    .register(meterRegistry);
+            // the percentile drops a buffer every window / buffers, so it always holds at least the last two thirds
+            // of the window : only the calls made within those are known to be behind it
+            this.samples = new RollingCounter(LATENCY_WINDOW.multipliedBy(LATENCY_BUFFERS - 1).dividedBy(LATENCY_BUFFERS),
+                    4, meterRegistry.config().clock());
+            this.sent = hedgeCounter(clientName, "sent");
+            this.won = hedgeCounter(clientName, "won");
+            this.suppressed = hedgeCounter(clientName, "suppressed");
+        }
+
+        <T> Mono<T> hedge(Mono<T> call) {
+            return Mono.defer(() -> {
+                hedgingBudget.deposit();
+                var delay = hedgeDelay();
+                var primary = timed(call);
+                if (delay == null) {
+                    return primary;
+                }
+                var hedged = Mono.delay(delay)
+                        .flatMap(tick -> {
+                            if (!hedgingBudget.tryWithdraw()) {
+                                suppressed.increment();
+                                return Mono.<T>never();
+                            }
+                            sent.increment();
+                            log.info("Hedging {} after {} ms", clientName, delay.toMillis());
+                            return timed(call).doOnNext(value -> won.increment());
+                        })
+                        // a failed hedge leaves the answer to the first attempt
+                        .onErrorResume(ex -> Mono.never());
+                return Mono.firstWithSignal(primary, hedged);
+            });
+        }
+
+        private <T> Mono<T> timed(Mono<T> call) {
+            return Mono.defer(() -> {
+                var start = System.nanoTime();
+                return call.doOnNext(value -> {
+                    latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    samples.increment();
+                });
+            });
+        }
+
+        // null while there are too few recent calls to trust the percentile, after a quiet spell it reads 0
+        // and every call would be hedged at the minimum delay
+        private Duration hedgeDelay() {
+            if (samples.count() < policy.getMinSamples()) {
+                return null;
+            }
+            var percentiles = latency.takeSnapshot().percentileValues();
+            if (percentiles.length == 0 || percentiles[0].value() <= 0) {
+                return null;
+            }
+            var delay = Duration.ofNanos((long) percentiles[0].value(TimeUnit.NANOSECONDS));
+            if (delay.compareTo(policy.getMinDelay()) < 0) {
+                return policy.getMinDelay();
+            }
+            return delay.compareTo(policy.getMaxDelay()) > 0 ? policy.getMaxDelay() : delay;
+        }
+    }
+
+    private Counter hedgeCounter(String clientName, String result) {
+        return Counter.builder("movies.client.hedges")
+                .tag("client", clientName)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,75 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight de-duplication : concurrent callers for the same key share one upstream {@link Mono}.
+ * The shared call is evicted once it completes or fails. A cancelled caller never cancels it for the others, the last
+ * one to cancel does, so no upstream call outlives its callers.
+ */
+public class RequestCoalescer<K, V> {
+
+    private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public RequestCoalescer(String clientName, MeterRegistry meterRegistry) {
+        this.hits = Counter.builder("movies.client.coalescing.requests")
+                .tag("client", clientName)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("movies.client.coalescing.requests")
+                .tag("client", clientName)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("movies.client.coalescing.hit.ratio", this, RequestCoalescer::hitRatio)
+                .tag("client", clientName)
+                .register(meterRegistry);
+        Gauge.builder("movies.client.coalescing.inflight", inFlight, Map::size)
+                .tag("client", clientName)
+                .register(meterRegistry);
+    }
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> supplier) {
+
+        return Mono.defer(() -> {
+            var shared = inFlight.get(key);
+            if (shared != null) {
+                hits.increment();
+                return shared;
+            }
+
+            // the removal runs once the upstream terminates or the last caller cancelled it. A caller that took the shared
+            // call just before then subscribes it again, which must not evict the call registered after it
+            var registered = new AtomicReference<Mono<V>>();
+            var candidate = Mono.defer(supplier)
+                    .doFinally(signalType -> inFlight.remove(key, registered.get()))
+                    .flux()
+                    .publish()
+                    .refCount(1)
+                    .singleOrEmpty();
+            registered.set(candidate);
+            shared = inFlight.putIfAbsent(key, candidate);
+            if (shared != null) {
+                hits.increment();
+                return shared;
+            }
+            misses.increment();
+            return candidate;
+        });
+    }
+
+    public double hitRatio() {
+        var total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+}
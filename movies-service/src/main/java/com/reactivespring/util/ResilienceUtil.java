@@ -0,0 +1,77 @@
+package com.reactivespring.util;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Circuit breaker and concurrency bulkhead per downstream, configured under {@code resilience4j.circuitbreaker}
+ * and {@code resilience4j.bulkhead} with the client name as instance name.
+ */
+@Component
+@Slf4j
+public class ResilienceUtil {
+
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    private BulkheadRegistry bulkheadRegistry;
+    private MeterRegistry meterRegistry;
+
+    private Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    public ResilienceUtil(CircuitBreakerRegistry circuitBreakerRegistry, BulkheadRegistry bulkheadRegistry, MeterRegistry meterRegistry) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.bulkheadRegistry = bulkheadRegistry;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Applied to every attempt, inside the retry : an open circuit or a full bulkhead fails fast and isn't retried.
+     * The circuit breaker sits inside the bulkhead, a rejection is our own saturation and is never recorded as a
+     * downstream failure.
+     */
+    public <T> Function<Mono<T>, Mono<T>> protect(String clientName) {
+        var circuitBreaker = circuitBreakers.computeIfAbsent(clientName, this::createCircuitBreaker);
+        var bulkhead = bulkheads.computeIfAbsent(clientName, this::createBulkhead);
+        return call -> call
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead));
+    }
+
+    private CircuitBreaker createCircuitBreaker(String clientName) {
+        var circuitBreaker = circuitBreakerRegistry.circuitBreaker(clientName);
+        circuitBreaker.getEventPublisher()
+                .onStateTransition(event -> {
+                    log.info("Circuit breaker {} : {}", clientName, event.getStateTransition());
+                    Counter.builder("movies.client.circuitbreaker.transitions")
+                            .tag("client", clientName)
+                            .tag("from", event.getStateTransition().getFromState().name())
+                            .tag("to", event.getStateTransition().getToState().name())
+                            .register(meterRegistry)
+                            .increment();
+                });
+        return circuitBreaker;
+    }
+
+    private Bulkhead createBulkhead(String clientName) {
+        var bulkhead = bulkheadRegistry.bulkhead(clientName);
+        var rejected = Counter.builder("movies.client.bulkhead.rejected")
+                .tag("client", clientName)
+                .register(meterRegistry);
+        bulkhead.getEventPublisher()
+                .onCallRejected(event -> rejected.increment());
+        return bulkhead;
+    }
+}
@@ -0,0 +1,43 @@
+package com.reactivespring.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket shared by all requests : every request deposits {@code ratio} of a token, every extra call
+ * withdraws a whole one. The balance is capped at {@code minRetries} tokens, which is also the initial balance.
+ */
+public class RetryBudget {
+
+    // tokens are kept in thousandths to stay on a lock-free long
+    private static final long SCALE = 1000;
+
+    private final long depositPerRequest;
+    private final long capacity;
+    private final AtomicLong balance;
+
+    public RetryBudget(double ratio, int minRetries) {
+        this.depositPerRequest = Math.round(ratio * SCALE);
+        this.capacity = Math.max(minRetries, 1) * SCALE;
+        this.balance = new AtomicLong(capacity);
+    }
+
+    public void deposit() {
+        balance.getAndUpdate(current -> Math.min(capacity, current + depositPerRequest));
+    }
+
+    public boolean tryWithdraw() {
+        while (true) {
+            var current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    public double available() {
+        return (double) balance.get() / SCALE;
+    }
+}
@@ -1,20 +1,90 @@
 package com.reactivespring.util;
 
+import com.reactivespring.config.RetryProperties;
 import com.reactivespring.exception.MoviesInfoServerException;
 import com.reactivespring.exception.ReviewsServerException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
-import reactor.util.retry.RetrySpec;
 
 import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
 
+@Component
+@Slf4j
 public class RetryUtil {
 
+    private RetryProperties retryProperties;
+    private MeterRegistry meterRegistry;
 
-    public static Retry retrySpec() {
-        return RetrySpec.fixedDelay(3, Duration.ofSeconds(1))
-                .filter((ex) -> ex instanceof MoviesInfoServerException || ex instanceof ReviewsServerException)
+    // shared by every client, so a brownout of one downstream can't multiply the overall load
+    private RetryBudget retryBudget;
+
+    private Map<String, Retry> retrySpecs = new ConcurrentHashMap<>();
+
+    public RetryUtil(RetryProperties retryProperties, MeterRegistry meterRegistry) {
+        this.retryProperties = retryProperties;
+        this.meterRegistry = meterRegistry;
+        this.retryBudget = new RetryBudget(retryProperties.getBudget().getRatio(), retryProperties.getBudget().getMinRetries());
+        Gauge.builder("movies.client.retry.budget", retryBudget, RetryBudget::available)
+                .register(meterRegistry);
+    }
+
+    public Retry retrySpec(String clientName) {
+        return retrySpecs.computeIfAbsent(clientName, this::createRetrySpec);
+    }
+
+    public Duration timeout(String clientName) {
+        return retryProperties.policy(clientName).getTimeout();
+    }
+
+    private Retry createRetrySpec(String clientName) {
+
+        var policy = retryProperties.policy(clientName);
+        var attempted = retryCounter(clientName, "attempted");
+        var suppressed = retryCounter(clientName, "suppressed");
+
+        var retrySpec = Retry.backoff(policy.getMaxRetries(), policy.getMinBackoff())
+                .maxBackoff(policy.getMaxBackoff())
+                .jitter(policy.getJitter())
+                .filter(RetryUtil::isRetryable)
+                .doBeforeRetryAsync(retrySignal -> {
+                    if (retryBudget.tryWithdraw()) {
+                        attempted.increment();
+                        return Mono.empty();
+                    }
+                    suppressed.increment();
+                    log.info("Retry budget exhausted, not retrying {} : {}", clientName, retrySignal.failure().getMessage());
+                    return Mono.error(retrySignal.failure());
+                })
                 .onRetryExhaustedThrow(((retryBackoffSpec, retrySignal) -> Exceptions.propagate(retrySignal.failure())));
 
+        // the companion is created once per subscription, that is once per request
+        return Retry.from(retrySignals -> {
+            retryBudget.deposit();
+            return retrySpec.generateCompanion(retrySignals);
+        });
+    }
+
+    private static boolean isRetryable(Throwable ex) {
+        return ex instanceof MoviesInfoServerException
+                || ex instanceof ReviewsServerException
+                || ex instanceof TimeoutException
+                || ex instanceof WebClientRequestException;
+    }
+
+    private Counter retryCounter(String clientName, String result) {
+        return Counter.builder("movies.client.retries")
+                .tag("client", clientName)
+                .tag("result", result)
+                .register(meterRegistry);
     }
 }
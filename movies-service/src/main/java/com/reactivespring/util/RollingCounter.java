@@ -0,0 +1,47 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Clock;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Events counted over the last {@code window}, kept in {@code slots} equal slots that expire one at a time. A count
+ * racing with the expiry of its slot may be lost, good enough for a gate.
+ */
+public class RollingCounter {
+
+    private final Clock clock;
+    private final long slotNanos;
+    private final AtomicLongArray counts;
+    // the slot number each count belongs to, a count left from an older round is stale
+    private final AtomicLongArray slots;
+
+    public RollingCounter(Duration window, int slots, Clock clock) {
+        this.clock = clock;
+        this.slotNanos = window.toNanos() / slots;
+        this.counts = new AtomicLongArray(slots);
+        this.slots = new AtomicLongArray(slots);
+    }
+
+    public void increment() {
+        var slot = clock.monotonicTime() / slotNanos;
+        var index = (int) (slot % counts.length());
+        var current = slots.get(index);
+        if (current != slot && slots.compareAndSet(index, current, slot)) {
+            counts.set(index, 0);
+        }
+        counts.incrementAndGet(index);
+    }
+
+    public long count() {
+        var slot = clock.monotonicTime() / slotNanos;
+        var count = 0L;
+        for (int index = 0; index < counts.length(); index++) {
+            if (slot - slots.get(index) < counts.length()) {
+                count += counts.get(index);
+            }
+        }
+        return count;
+    }
+}
@@ -1,21 +1,32 @@
 package com.reactivespring.controller;
 
 import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.cache.StaleWhileRevalidateCache;
+import com.reactivespring.client.MoviesInfoRestClient;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.MoviesInfoClientException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.client.AutoConfigureWebClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
 
 import java.util.Objects;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
@@ -24,16 +35,28 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 @TestPropertySource(properties = {
         "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos",
         "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+        "movies.reviews.latencyBudget=2s",
 })
 public class MoviesControllerIntgTest {
 
     @Autowired
     WebTestClient webTestClient;
 
+    @Autowired
+    MoviesInfoRestClient moviesInfoRestClient;
+
+    @Autowired
+    StaleWhileRevalidateCache<String, MovieInfo> movieInfoCache;
+
+    @Autowired
+    CircuitBreakerRegistry circuitBreakerRegistry;
+
 
     @BeforeEach
     void setUp() {
         WireMock.reset();
+        movieInfoCache.invalidateAll();
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(CircuitBreaker::reset);
     }
 
     @Test
@@ -67,6 +90,360 @@ public class MoviesControllerIntgTest {
         //then
     }
 
+    @Test
+    void retrieveMovieById_concurrentLatency() {
+        //given
+        var movieId = "abc";
+        var movieInfoDelay = 1000;
+        var reviewsDelay = 1000;
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(movieInfoDelay)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(reviewsDelay)));
+
+        //when
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                            var movie = movieEntityExchangeResult.getResponseBody();
+                            assert Objects.requireNonNull(movie).getReviewList().size() == 2;
+                        }
+                );
+
+        //then
+        // a sequential aggregation only sends the second call once the first one answered, a delay later
+        var movieInfoRequested = WireMock.findAll(getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId)))
+                .get(0).getLoggedDate().getTime();
+        var reviewsRequested = WireMock.findAll(getRequestedFor(urlPathEqualTo("/v1/reviews")))
+                .get(0).getLoggedDate().getTime();
+        assertTrue(Math.abs(reviewsRequested - movieInfoRequested) < Math.min(movieInfoDelay, reviewsDelay));
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void retrieveMovieById_reviewsDegraded() {
+        //given
+        var movieId = "abc";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(2500)));
+
+        //when
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                            var movie = movieEntityExchangeResult.getResponseBody();
+                            assertTrue(Objects.requireNonNull(movie).isDegraded());
+                            assertEquals(0, movie.getReviewList().size());
+                            assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                        }
+                );
+    }
+
+    @Test
+    void retrieveMovieInfo_coalesced() {
+        //given
+        var movieId = "abc";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(500)));
+
+        //when
+        var movieInfos = Flux.range(0, 10)
+                .flatMap(i -> moviesInfoRestClient.retrieveMovieInfo(movieId))
+                .collectList()
+                .block();
+
+        //then
+        assertEquals(10, Objects.requireNonNull(movieInfos).size());
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId)));
+    }
+
+    @Test
+    void retrieveMovieInfoStream_shared() {
+        //given
+        stubFor(get(urlEqualTo("/v1/movieinfos/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", MediaType.APPLICATION_NDJSON_VALUE)
+                        .withBody("{\"movieInfoId\":\"1\",\"name\":\"Batman Begins\",\"year\":2005}\n"
+                                + "{\"movieInfoId\":\"2\",\"name\":\"The Dark Knight\",\"year\":2008}\n")
+                        .withFixedDelay(500)));
+
+        //when
+        var movieInfos = Flux.range(0, 5)
+                .flatMap(i -> moviesInfoRestClient.retrieveMovieInfoStream())
+                .collectList()
+                .block();
+
+        //then
+        assertEquals(10, Objects.requireNonNull(movieInfos).size());
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/movieinfos/stream")));
+    }
+
+    @Test
+    void retrieveMovieById_summary() {
+        //given
+        var movieId = "abc";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews/stats"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"movieInfoId\":1,\"count\":2,\"sum\":17.0,\"min\":8.0,\"max\":9.0,"
+                                + "\"histogram\":{\"8\":1,\"9\":1},\"average\":8.5}")));
+
+        //when
+        webTestClient.get()
+                .uri("/v1/movies/{id}?view=summary", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.reviewStats.count").isEqualTo(2)
+                .jsonPath("$.reviewStats.average").isEqualTo(8.5)
+                .jsonPath("$.reviewList").doesNotExist();
+
+        //then
+        WireMock.verify(0, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void retrieveMovieById_ratings() {
+        //given
+        var movieId = "abc";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .withQueryParam("fields", equalTo("reviewId,rating"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[{\"reviewId\":\"1\",\"rating\":9.0},{\"reviewId\":\"2\",\"rating\":8.0}]")));
+
+        //when
+        webTestClient.get()
+                .uri("/v1/movies/{id}?view=ratings", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.reviewList.length()").isEqualTo(2)
+                .jsonPath("$.reviewList[1].rating").isEqualTo(8.0)
+                .jsonPath("$.reviewList[1].comment").doesNotExist();
+    }
+
+    @Test
+    void retrieveMovieById_reviewsPaged() {
+        //given
+        var movieId = "abc";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .withQueryParam("after", absent())
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("X-Next-Cursor", "2")
+                        .withBody("[{\"reviewId\":\"1\",\"rating\":9.0},{\"reviewId\":\"2\",\"rating\":8.0}]")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .withQueryParam("after", equalTo("2"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[{\"reviewId\":\"3\",\"rating\":7.0}]")));
+
+        //when
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.reviewList.length()").isEqualTo(3)
+                .jsonPath("$.reviewList[2].reviewId").isEqualTo("3");
+
+        //then
+        WireMock.verify(2, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void retrieveMovieById_ratingsPaged() {
+        //given
+        var movieId = "abc";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .withQueryParam("fields", equalTo("reviewId,rating"))
+                .withQueryParam("after", absent())
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("X-Next-Cursor", "2")
+                        .withBody("[{\"reviewId\":\"1\",\"rating\":9.0},{\"reviewId\":\"2\",\"rating\":8.0}]")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .withQueryParam("fields", equalTo("reviewId,rating"))
+                .withQueryParam("after", equalTo("2"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[{\"reviewId\":\"3\",\"rating\":7.0}]")));
+
+        //when
+        webTestClient.get()
+                .uri("/v1/movies/{id}?view=ratings", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.reviewList.length()").isEqualTo(3)
+                .jsonPath("$.reviewList[2].rating").isEqualTo(7.0);
+
+        //then
+        WireMock.verify(2, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void retrieveReviewsByMovieId() {
+        //given
+        var movieId = "1";
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .withHeader("Accept", containing(MediaType.APPLICATION_NDJSON_VALUE))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", MediaType.APPLICATION_NDJSON_VALUE)
+                        .withBody("{\"reviewId\":\"1\",\"movieInfoId\":1,\"comment\":\"Awesome Movie\",\"rating\":9.0}\n"
+                                + "{\"reviewId\":\"2\",\"movieInfoId\":1,\"comment\":\"Awesome Movie1\",\"rating\":9.0}\n")));
+
+        //when
+        var reviewFlux = webTestClient.get()
+                .uri("/v1/movies/{id}/reviews", movieId)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(reviewFlux)
+                .assertNext(review -> assertEquals("1", review.getReviewId()))
+                .assertNext(review -> assertEquals("2", review.getReviewId()))
+                .verifyComplete();
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/reviews?movieInfoId=" + movieId)));
+    }
+
+    @Test
+    void retrieveMovieInfo_cached() {
+        //given
+        var movieId = "abc";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        //when
+        moviesInfoRestClient.retrieveMovieInfo(movieId).block();
+        var movieInfo = moviesInfoRestClient.retrieveMovieInfo(movieId).block();
+
+        //then
+        assertEquals("Batman Begins", Objects.requireNonNull(movieInfo).getName());
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId)));
+    }
+
+    @Test
+    void retrieveMovieInfo_notFoundCached() {
+        //given
+        var movieId = "abc";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+
+        //when
+        StepVerifier.create(moviesInfoRestClient.retrieveMovieInfo(movieId))
+                .expectError(MoviesInfoClientException.class)
+                .verify();
+        StepVerifier.create(moviesInfoRestClient.retrieveMovieInfo(movieId))
+                .expectError(MoviesInfoClientException.class)
+                .verify();
+
+        //then
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId)));
+    }
+
+    @Test
+    void retrieveMoviesByIds() {
+        //given
+        stubFor(get(urlEqualTo("/v1/movieinfos/1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/2"))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoIds", equalTo("1,2"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        //when
+        var movieFlux = webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/v1/movies")
+                        .queryParam("ids", "1,2")
+                        .build())
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Movie.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(movieFlux)
+                .assertNext(movie -> {
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                    assertEquals(2, movie.getReviewList().size());
+                })
+                .verifyComplete();
+
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
     @Test
     void retrieveMovieById_404() {
         //given
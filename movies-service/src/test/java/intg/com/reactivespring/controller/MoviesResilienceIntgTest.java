@@ -0,0 +1,169 @@
+package com.reactivespring.controller;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.reactivespring.cache.StaleWhileRevalidateCache;
+import com.reactivespring.domain.MovieInfo;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.client.AutoConfigureWebClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebClient
+@AutoConfigureWireMock(port = 0)
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/movieinfos",
+        "restClient.reviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.reviews.cache.enabled=false",
+        "resilience4j.circuitbreaker.instances.moviesInfo.slidingWindowSize=4",
+        "resilience4j.circuitbreaker.instances.moviesInfo.minimumNumberOfCalls=4",
+        "resilience4j.circuitbreaker.instances.moviesInfo.slowCallDurationThreshold=200ms",
+        "resilience4j.circuitbreaker.instances.moviesInfo.waitDurationInOpenState=1m",
+        "resilience4j.bulkhead.instances.moviesInfo.maxConcurrentCalls=2",
+})
+public class MoviesResilienceIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    StaleWhileRevalidateCache<String, MovieInfo> movieInfoCache;
+
+    @Autowired
+    CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.reset();
+        movieInfoCache.invalidateAll();
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(CircuitBreaker::reset);
+    }
+
+    @Test
+    void retrieveMovieById_circuitOpensOnConnectionResets() {
+        //given
+        var movieId = "abc";
+        stubFor(get(urlEqualTo("/v1/movieinfos/" + movieId))
+                .willReturn(aResponse()
+                        .withFault(Fault.CONNECTION_RESET_BY_PEER)));
+
+        //when
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().is5xxServerError();
+
+        //then
+        // the first request and its 3 retries fill the sliding window
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreakerRegistry.circuitBreaker("moviesInfo").getState());
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isEqualTo(503);
+        WireMock.verify(4, getRequestedFor(urlEqualTo("/v1/movieinfos/" + movieId)));
+    }
+
+    @Test
+    void retrieveMovieById_circuitOpensOnSlowCalls() {
+        //given
+        stubFor(get(urlPathMatching("/v1/movieinfos/.*"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(300)));
+
+        //when
+        for (int i = 0; i < 4; i++) {
+            webTestClient.get()
+                    .uri("/v1/movies/{id}", "slow" + i)
+                    .exchange()
+                    .expectStatus().isOk();
+        }
+
+        //then
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreakerRegistry.circuitBreaker("moviesInfo").getState());
+        webTestClient.get()
+                .uri("/v1/movies/{id}", "slow4")
+                .exchange()
+                .expectStatus().isEqualTo(503);
+        WireMock.verify(4, getRequestedFor(urlPathMatching("/v1/movieinfos/.*")));
+    }
+
+    @Test
+    void retrieveMovieById_bulkheadRejectsExcessCalls() {
+        //given
+        stubFor(get(urlPathMatching("/v1/movieinfos/.*"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(150)));
+        var rejectedBefore = meterRegistry.get("movies.client.bulkhead.rejected").tag("client", "moviesInfo").counter().count();
+
+        //when
+        var statuses = Flux.range(0, 5)
+                .flatMap(i -> Mono.fromCallable(() -> webTestClient.get()
+                                .uri("/v1/movies/{id}", "concurrent" + i)
+                                .exchange()
+                                .returnResult(String.class)
+                                .getStatus()
+                                .value())
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .collectList()
+                .block();
+
+        //then
+        var rejected = statuses.stream().filter(status -> status == 503).count();
+        assertTrue(rejected > 0);
+        assertEquals(5 - rejected, statuses.stream().filter(status -> status == 200).count());
+        assertEquals(rejected, meterRegistry.get("movies.client.bulkhead.rejected").tag("client", "moviesInfo").counter().count() - rejectedBefore);
+    }
+
+    @Test
+    void retrieveMovieById_bulkheadRejectionsLeaveCircuitClosed() {
+        //given
+        stubFor(get(urlPathMatching("/v1/movieinfos/.*"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(150)));
+
+        //when
+        // more rejections than the sliding window holds, enough to open it if they were counted as failures
+        var statuses = Flux.range(0, 8)
+                .flatMap(i -> Mono.fromCallable(() -> webTestClient.get()
+                                .uri("/v1/movies/{id}", "saturated" + i)
+                                .exchange()
+                                .returnResult(String.class)
+                                .getStatus()
+                                .value())
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .collectList()
+                .block();
+
+        //then
+        var circuitBreaker = circuitBreakerRegistry.circuitBreaker("moviesInfo");
+        assertTrue(statuses.stream().filter(status -> status == 503).count() >= 4);
+        assertEquals(0, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+}
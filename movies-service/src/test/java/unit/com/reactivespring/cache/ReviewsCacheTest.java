@@ -0,0 +1,120 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.domain.Review;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ReviewsCacheTest {
+
+    ReviewsCache reviewsCache = new ReviewsCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+
+    AtomicInteger loads = new AtomicInteger();
+
+    Mono<List<Review>> load(String movieId) {
+        return Mono.fromCallable(() -> {
+            loads.incrementAndGet();
+            return List.of(new Review(null, Long.valueOf(movieId), "Awesome Movie", 9.0));
+        });
+    }
+
+    @Test
+    void get_bypassedWhileDisconnected() {
+        //when
+        reviewsCache.get("1", this::load).block();
+        reviewsCache.get("1", this::load).block();
+
+        //then
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_cachedWhileConnected() {
+        //given
+        reviewsCache.connected();
+
+        //when
+        reviewsCache.get("1", this::load).block();
+        var reviews = reviewsCache.get("1", this::load).block();
+
+        //then
+        assertEquals(1, reviews.size());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void apply_invalidatesMovie() {
+        //given
+        reviewsCache.connected();
+        reviewsCache.get("1", this::load).block();
+        reviewsCache.get("2", this::load).block();
+
+        //when
+        reviewsCache.apply(new Review("abc", 1L, "Excellent Movie", 8.0));
+        reviewsCache.get("1", this::load).block();
+        reviewsCache.get("2", this::load).block();
+
+        //then
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void apply_bulkInvalidationEvictsMovie() throws Exception {
+        //given
+        reviewsCache.connected();
+        reviewsCache.get("24", this::load).block();
+        // the stream line sent once reviews of movie 24 were bulk inserted, read the way ReviewsRestClient reads it
+        var invalidation = Jackson2ObjectMapperBuilder.json().build()
+                .readValue("{\"id\":\"0badc0de-3\",\"seq\":3,\"type\":\"INVALIDATED\",\"reviewId\":null,\"movieInfoId\":24,\"comment\":null,\"rating\":null}",
+                        Review.class);
+
+        //when
+        reviewsCache.apply(invalidation);
+        reviewsCache.get("24", this::load).block();
+
+        //then
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_loadOverlappingReviewIsNotCached() {
+        //given
+        reviewsCache.connected();
+        Sinks.One<List<Review>> upstream = Sinks.one();
+
+        //when
+        StepVerifier.create(reviewsCache.get("1", movieId -> upstream.asMono()))
+                .then(() -> reviewsCache.apply(new Review("abc", 1L, "Excellent Movie", 8.0)))
+                .then(() -> upstream.tryEmitValue(List.of()))
+                .expectNext(List.of())
+                .verifyComplete();
+        reviewsCache.get("1", this::load).block();
+
+        //then
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void disconnected_clearsCache() {
+        //given
+        reviewsCache.connected();
+        reviewsCache.get("1", this::load).block();
+
+        //when
+        reviewsCache.disconnected();
+        reviewsCache.connected();
+        reviewsCache.get("1", this::load).block();
+
+        //then
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,182 @@
+package com.reactivespring.cache;
+
+import com.sun.management.ThreadMXBean;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StaleWhileRevalidateCacheTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    AtomicInteger loads = new AtomicInteger();
+
+    Mono<String> load(String key) {
+        return Mono.fromCallable(() -> key + "-" + loads.incrementAndGet());
+    }
+
+    StaleWhileRevalidateCache<String, String> cache(Duration ttl, Duration staleWhileRevalidate) {
+        return new StaleWhileRevalidateCache<>("test", 100, ttl, staleWhileRevalidate, Duration.ofMillis(200),
+                ex -> ex instanceof IllegalArgumentException, meterRegistry);
+    }
+
+    double count(String result) {
+        return meterRegistry.get("movies.cache.requests").tag("result", result).counter().count();
+    }
+
+    @Test
+    void get_hit() {
+        //given
+        var cache = cache(Duration.ofMinutes(1), Duration.ofMinutes(1));
+
+        //when
+        StepVerifier.create(cache.get("abc", this::load))
+                .expectNext("abc-1")
+                .verifyComplete();
+        StepVerifier.create(cache.get("abc", this::load))
+                .expectNext("abc-1")
+                .verifyComplete();
+
+        //then
+        assertEquals(1, loads.get());
+        assertEquals(1, count("miss"));
+        assertEquals(1, count("hit"));
+    }
+
+    @Test
+    void get_staleWhileRevalidate() throws InterruptedException {
+        //given
+        var cache = cache(Duration.ofMillis(50), Duration.ofMinutes(1));
+        cache.get("abc", this::load).block();
+        Thread.sleep(100);
+
+        //when
+        StepVerifier.create(cache.get("abc", this::load))
+                .expectNext("abc-1")
+                .verifyComplete();
+
+        //then
+        StepVerifier.create(cache.get("abc", this::load))
+                .expectNext("abc-2")
+                .verifyComplete();
+        assertEquals(2, loads.get());
+        assertEquals(1, meterRegistry.get("movies.cache.refreshes").counter().count());
+    }
+
+    @Test
+    void get_refreshedAgainAfterEmptyRefresh() throws InterruptedException {
+        //given
+        var cache = cache(Duration.ofMillis(50), Duration.ofMinutes(1));
+        cache.get("abc", this::load).block();
+        Thread.sleep(100);
+        var emptyRefreshes = new AtomicInteger();
+
+        //when
+        // the upstream answers the refresh with nothing, the stale value stays
+        StepVerifier.create(cache.get("abc", key -> Mono.<String>empty()
+                        .doOnSubscribe(subscription -> emptyRefreshes.incrementAndGet())))
+                .expectNext("abc-1")
+                .verifyComplete();
+
+        //then
+        // the refresh is no longer taken as running, the next stale read starts another one
+        StepVerifier.create(cache.get("abc", this::load))
+                .expectNext("abc-1")
+                .verifyComplete();
+        StepVerifier.create(cache.get("abc", this::load))
+                .expectNext("abc-2")
+                .verifyComplete();
+        assertEquals(1, emptyRefreshes.get());
+        assertEquals(2, meterRegistry.get("movies.cache.refreshes").counter().count());
+    }
+
+    @Test
+    void get_expiredAfterStaleWindow() throws InterruptedException {
+        //given
+        var cache = cache(Duration.ofMillis(50), Duration.ofMillis(50));
+        cache.get("abc", this::load).block();
+        Thread.sleep(150);
+
+        //when
+        StepVerifier.create(cache.get("abc", this::load))
+                .expectNext("abc-2")
+                .verifyComplete();
+
+        //then
+        assertEquals(2, count("miss"));
+    }
+
+    @Test
+    void get_notFoundCached() throws InterruptedException {
+        //given
+        var cache = cache(Duration.ofMinutes(1), Duration.ofMinutes(1));
+        var notFound = Mono.<String>error(new IllegalArgumentException("MovieNotFound"))
+                .doOnSubscribe(subscription -> loads.incrementAndGet());
+
+        //when
+        StepVerifier.create(cache.get("abc", key -> notFound))
+                .expectErrorMessage("MovieNotFound")
+                .verify();
+        StepVerifier.create(cache.get("abc", key -> notFound))
+                .expectErrorMessage("MovieNotFound")
+                .verify();
+        Thread.sleep(250);
+        StepVerifier.create(cache.get("abc", key -> notFound))
+                .expectErrorMessage("MovieNotFound")
+                .verify();
+
+        //then
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_serverErrorNotCached() {
+        //given
+        var cache = cache(Duration.ofMinutes(1), Duration.ofMinutes(1));
+        var serverError = Mono.<String>error(new IllegalStateException("Service Unavailable"))
+                .doOnSubscribe(subscription -> loads.incrementAndGet());
+
+        //when
+        StepVerifier.create(cache.get("abc", key -> serverError))
+                .expectErrorMessage("Service Unavailable")
+                .verify();
+        StepVerifier.create(cache.get("abc", key -> serverError))
+                .expectErrorMessage("Service Unavailable")
+                .verify();
+
+        //then
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_allocationPerHit() {
+        //given
+        var cache = cache(Duration.ofMinutes(1), Duration.ofMinutes(1));
+        var threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var threadId = Thread.currentThread().getId();
+        cache.get("abc", this::load).block();
+        for (int i = 0; i < 100_000; i++) {
+            cache.get("abc", this::load).subscribe();
+        }
+
+        //when
+        var hits = 100_000;
+        var before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < hits; i++) {
+            cache.get("abc", this::load).subscribe();
+        }
+        var bytesPerHit = (threadMXBean.getThreadAllocatedBytes(threadId) - before) / hits;
+
+        //then
+        assertTrue(bytesPerHit < 512, () -> "bytesPerHit : " + bytesPerHit);
+        assertEquals(1, loads.get());
+    }
+}
@@ -0,0 +1,97 @@
+package com.reactivespring.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WebClientConfigTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    WebClientProperties webClientProperties = new WebClientProperties();
+
+    WebClientConfig webClientConfig = new WebClientConfig(webClientProperties, meterRegistry);
+
+    DisposableServer server;
+
+    @BeforeEach
+    void setUp() {
+        server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .get("/slow", (request, response) -> response.sendString(Mono.just("slow").delayElement(Duration.ofMillis(300))))
+                        .get("/silent", (request, response) -> response.sendString(Mono.never())))
+                .bindNow();
+    }
+
+    @AfterEach
+    void tearDown() {
+        webClientConfig.disposeConnectionProviders();
+        server.disposeNow();
+    }
+
+    WebClient moviesInfoWebClient(int maxConnections, int pendingAcquireMaxCount) {
+        var client = new WebClientProperties.Client();
+        client.setMaxConnections(maxConnections);
+        client.setPendingAcquireMaxCount(pendingAcquireMaxCount);
+        client.setResponseTimeout(Duration.ofMillis(500));
+        webClientProperties.getClients().put("moviesInfo", client);
+        return webClientConfig.moviesInfoWebClient(WebClient.builder());
+    }
+
+    Mono<String> get(WebClient webClient, String path) {
+        return webClient.get()
+                .uri("http://localhost:" + server.port() + path)
+                .retrieve()
+                .bodyToMono(String.class);
+    }
+
+    @Test
+    void moviesInfoWebClient_pendingAcquireLimit() {
+        //given
+        var webClient = moviesInfoWebClient(1, 1);
+
+        //when
+        var responses = Flux.range(0, 3)
+                .flatMap(i -> get(webClient, "/slow")
+                        .onErrorResume(WebClientRequestException.class,
+                                ex -> Mono.just(ex.getCause().getClass().getSimpleName())));
+
+        //then
+        StepVerifier.create(responses.collectList())
+                .assertNext(results -> {
+                    assertEquals(2, results.stream().filter("slow"::equals).count());
+                    assertTrue(results.contains("PoolAcquirePendingLimitException"));
+                })
+                .verifyComplete();
+        assertEquals(3, meterRegistry.get("movies.client.pool.acquire").tag("client", "moviesInfo").timer().count());
+        assertEquals(0, meterRegistry.get("movies.client.pool.pending").tag("client", "moviesInfo").gauge().value());
+    }
+
+    @Test
+    void moviesInfoWebClient_responseTimeout() {
+        //given
+        var webClient = moviesInfoWebClient(1, 1);
+
+        //when
+        var response = get(webClient, "/silent");
+
+        //then
+        StepVerifier.create(response)
+                .expectErrorMatches(ex -> ex instanceof WebClientRequestException)
+                .verify(Duration.ofSeconds(2));
+    }
+}
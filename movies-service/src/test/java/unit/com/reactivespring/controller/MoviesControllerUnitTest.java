@@ -5,6 +5,8 @@ import com.reactivespring.client.ReviewsRestClient;
 import com.reactivespring.domain.Movie;
 import com.reactivespring.domain.MovieInfo;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewRating;
+import com.reactivespring.domain.ReviewStats;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
 import org.junit.jupiter.api.Test;
@@ -12,16 +14,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest(controllers = MoviesController.class)
@@ -69,6 +78,147 @@ public class MoviesControllerUnitTest {
         //then
     }
 
+    @Test
+    void retrieveMovieById_summary() {
+
+        var movieId = "abc";
+        when(moviesInfoRestClient.retrieveMovieInfo(anyString()))
+                .thenReturn(Mono.just(new MovieInfo(movieId, "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"))));
+
+        when(reviewsRestClient.retrieveReviewStats(movieId))
+                .thenReturn(Mono.just(new ReviewStats(1L, 2, 8.5, 8.0, 9.0, Map.of("8", 1L, "9", 1L))));
+
+        //when
+        webTestClient.get()
+                .uri("/v1/movies/{id}?view=summary", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.movieInfo.name").isEqualTo("Batman Begins")
+                .jsonPath("$.reviewStats.count").isEqualTo(2)
+                .jsonPath("$.reviewStats.average").isEqualTo(8.5)
+                .jsonPath("$.reviewList").doesNotExist()
+                .jsonPath("$.degraded").isEqualTo(false);
+
+        //then
+        verify(reviewsRestClient, times(0)).retrieveReviews(anyString());
+    }
+
+    @Test
+    void retrieveMovieById_ratings() {
+
+        var movieId = "abc";
+        when(moviesInfoRestClient.retrieveMovieInfo(anyString()))
+                .thenReturn(Mono.just(new MovieInfo(movieId, "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"))));
+
+        when(reviewsRestClient.retrieveReviewRatings(movieId))
+                .thenReturn(Flux.just(new ReviewRating("1", 9.0), new ReviewRating("2", 8.0)));
+
+        //when
+        webTestClient.get()
+                .uri("/v1/movies/{id}?view=ratings", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.reviewList.length()").isEqualTo(2)
+                .jsonPath("$.reviewList[0].rating").isEqualTo(9.0)
+                .jsonPath("$.reviewList[0].comment").doesNotExist();
+
+        //then
+        verify(reviewsRestClient, times(0)).retrieveReviews(anyString());
+    }
+
+    @Test
+    void retrieveMovieById_unknownView() {
+
+        //when
+        webTestClient.get()
+                .uri("/v1/movies/{id}?view=rating", "abc")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("view : must be one of full, summary, ratings");
+
+        //then
+        verify(moviesInfoRestClient, times(0)).retrieveMovieInfo(anyString());
+    }
+
+    @Test
+    void retrieveMovieById_nullFieldsWritten() {
+
+        var movieId = "abc";
+        when(moviesInfoRestClient.retrieveMovieInfo(anyString()))
+                .thenReturn(Mono.just(new MovieInfo(movieId, "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"))));
+
+        when(reviewsRestClient.retrieveReviews(movieId))
+                .thenReturn(Flux.just(new Review("1", 1L, "No rating yet", null)));
+
+        //when
+        // only the ratings view leaves fields out, the full view writes a missing rating as null
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.reviewList[0].comment").isEqualTo("No rating yet")
+                .jsonPath("$.reviewList[0]").value(review -> assertTrue(((Map<?, ?>) review).containsKey("rating")));
+    }
+
+    @Test
+    void retrieveReviewsByMovieId() {
+
+        var reviewList = List.of(
+                new Review("1", 1L, "Awesome Movie", 9.0),
+                new Review("2", 1L, "Awesome Movie1", 9.0));
+
+        when(reviewsRestClient.retrieveReviewsStream("1"))
+                .thenReturn(Flux.fromIterable(reviewList));
+
+        //when
+        var reviewFlux = webTestClient.get()
+                .uri("/v1/movies/{id}/reviews", "1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Review.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(reviewFlux)
+                .assertNext(review -> assertEquals("1", review.getReviewId()))
+                .assertNext(review -> assertEquals("2", review.getReviewId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void retrieveMovieById_reviewsDegraded() {
+
+        var movieId = "abc";
+        when(moviesInfoRestClient.retrieveMovieInfo(anyString()))
+                .thenReturn(Mono.just(new MovieInfo(movieId, "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"))));
+
+        when(reviewsRestClient.retrieveReviews(anyString()))
+                .thenReturn(Flux.never());
+
+        //when
+        webTestClient.get()
+                .uri("/v1/movies/{id}", "abc")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                            var movie = movieEntityExchangeResult.getResponseBody();
+                            assert Objects.requireNonNull(movie).isDegraded();
+                            assertEquals(0, movie.getReviewList().size());
+                            assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                        }
+                );
+    }
+
     @Test
     void retrieveMovieById_404() {
 
@@ -126,4 +276,65 @@ public class MoviesControllerUnitTest {
     }
 
 
+    @Test
+    void retrieveMoviesByIds() {
+
+        var reviewList = List.of(
+                new Review(null, 1L, "Awesome Movie", 9.0),
+                new Review(null, 1L, "Awesome Movie1", 9.0));
+
+        when(moviesInfoRestClient.retrieveMovieInfo(anyString()))
+                .thenAnswer(invocation -> Mono.just(new MovieInfo(invocation.getArgument(0), "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"))));
+        when(moviesInfoRestClient.retrieveMovieInfo("3"))
+                .thenReturn(Mono.error(new MoviesInfoClientException("MovieNotFound", 404)));
+
+        when(reviewsRestClient.retrieveReviews(anyCollection()))
+                .thenReturn(Flux.fromIterable(reviewList));
+
+        //when
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/v1/movies")
+                        .queryParam("ids", "1,2,3")
+                        .build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Movie.class)
+                .value(movies -> {
+                    assertEquals(2, movies.size());
+                    movies.forEach(movie -> {
+                        var expectedReviews = movie.getMovieInfo().getMovieInfoId().equals("1") ? 2 : 0;
+                        assertEquals(expectedReviews, movie.getReviewList().size());
+                    });
+                });
+
+        verify(reviewsRestClient, times(1)).retrieveReviews(List.of("1", "2", "3"));
+    }
+
+    @Test
+    void retrieveMovies_stream() {
+
+        when(moviesInfoRestClient.retrieveMovieInfo(anyString()))
+                .thenAnswer(invocation -> Mono.just(new MovieInfo(invocation.getArgument(0), "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"))));
+
+        when(reviewsRestClient.retrieveReviews(anyCollection()))
+                .thenReturn(Flux.empty());
+
+        //when
+        var movieFlux = webTestClient.post()
+                .uri("/v1/movies")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(List.of("1", "2", "2"))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Movie.class)
+                .getResponseBody();
+
+        //then
+        StepVerifier.create(movieFlux)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
 }
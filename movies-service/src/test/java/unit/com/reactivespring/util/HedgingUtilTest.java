@@ -0,0 +1,155 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.HedgingProperties;
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HedgingUtilTest {
+
+    MockClock clock = new MockClock();
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock);
+
+    HedgingUtil hedgingUtil(boolean enabled, double ratio, int minHedges) {
+        var hedgingProperties = new HedgingProperties();
+        hedgingProperties.getBudget().setRatio(ratio);
+        hedgingProperties.getBudget().setMinHedges(minHedges);
+        var policy = new HedgingProperties.Policy();
+        policy.setEnabled(enabled);
+        policy.setMinDelay(Duration.ofMillis(50));
+        policy.setMinSamples(5);
+        hedgingProperties.getPolicies().put("moviesInfo", policy);
+        return new HedgingUtil(hedgingProperties, meterRegistry);
+    }
+
+    double hedges(String result) {
+        return meterRegistry.get("movies.client.hedges").tag("result", result).counter().count();
+    }
+
+    void warmUp(HedgingUtil hedgingUtil) {
+        for (int i = 0; i < 5; i++) {
+            Mono.just("fast").transform(hedgingUtil.<String>hedge("moviesInfo")).block();
+        }
+    }
+
+    // the first attempt hangs, every later one answers right away
+    Mono<String> slowFirstAttempt(AtomicInteger attempts, AtomicInteger cancelled) {
+        return Mono.defer(() -> attempts.incrementAndGet() == 1
+                ? Mono.<String>never().doOnCancel(cancelled::incrementAndGet)
+                : Mono.just("hedge"));
+    }
+
+    @Test
+    void hedge_slowAttemptIsHedged() {
+        //given
+        var hedgingUtil = hedgingUtil(true, 0.05, 5);
+        warmUp(hedgingUtil);
+        var attempts = new AtomicInteger();
+        var cancelled = new AtomicInteger();
+
+        //when
+        StepVerifier.create(slowFirstAttempt(attempts, cancelled).transform(hedgingUtil.hedge("moviesInfo")))
+                .expectNext("hedge")
+                .expectComplete()
+                .verify(Duration.ofSeconds(2));
+
+        //then
+        assertEquals(2, attempts.get());
+        assertEquals(1, cancelled.get());
+        assertEquals(1, hedges("sent"));
+        assertEquals(1, hedges("won"));
+    }
+
+    @Test
+    void hedge_noHedgeBeforeMinSamples() {
+        //given
+        var hedgingUtil = hedgingUtil(true, 0.05, 5);
+        var attempts = new AtomicInteger();
+        var cancelled = new AtomicInteger();
+
+        //when
+        StepVerifier.create(slowFirstAttempt(attempts, cancelled).transform(hedgingUtil.hedge("moviesInfo")))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(300))
+                .thenCancel()
+                .verify();
+
+        //then
+        assertEquals(1, attempts.get());
+        assertEquals(0, hedges("sent"));
+    }
+
+    @Test
+    void hedge_noHedgeAfterQuietWindow() {
+        //given
+        var hedgingUtil = hedgingUtil(true, 0.05, 5);
+        warmUp(hedgingUtil);
+        // the percentile has forgotten the warm-up calls
+        clock.add(Duration.ofMinutes(2));
+        var attempts = new AtomicInteger();
+        var cancelled = new AtomicInteger();
+
+        //when
+        StepVerifier.create(slowFirstAttempt(attempts, cancelled).transform(hedgingUtil.hedge("moviesInfo")))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(300))
+                .thenCancel()
+                .verify();
+
+        //then
+        assertEquals(1, attempts.get());
+        assertEquals(0, hedges("sent"));
+    }
+
+    @Test
+    void hedge_budgetSuppressesHedges() {
+        //given
+        var hedgingUtil = hedgingUtil(true, 0, 1);
+        warmUp(hedgingUtil);
+        var attempts = new AtomicInteger();
+        var cancelled = new AtomicInteger();
+
+        //when
+        StepVerifier.create(slowFirstAttempt(attempts, cancelled).transform(hedgingUtil.hedge("moviesInfo")))
+                .expectNext("hedge")
+                .expectComplete()
+                .verify(Duration.ofSeconds(2));
+        attempts.set(0);
+        StepVerifier.create(slowFirstAttempt(attempts, cancelled).transform(hedgingUtil.hedge("moviesInfo")))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(300))
+                .thenCancel()
+                .verify();
+
+        //then
+        assertEquals(1, attempts.get());
+        assertEquals(1, hedges("sent"));
+        assertEquals(1, hedges("suppressed"));
+    }
+
+    @Test
+    void hedge_disabled() {
+        //given
+        var hedgingUtil = hedgingUtil(false, 0.05, 5);
+        var attempts = new AtomicInteger();
+
+        //when
+        StepVerifier.create(Mono.fromSupplier(() -> "movie" + attempts.incrementAndGet())
+                        .transform(hedgingUtil.hedge("moviesInfo")))
+                .expectNext("movie1")
+                .verifyComplete();
+
+        //then
+        assertEquals(1, attempts.get());
+        assertEquals(0, meterRegistry.find("movies.client.hedges").counters().size());
+    }
+}
@@ -0,0 +1,112 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RequestCoalescerTest {
+
+    RequestCoalescer<String, String> requestCoalescer = new RequestCoalescer<>("test", new SimpleMeterRegistry());
+
+    @Test
+    void execute_sharesInFlightCall() {
+        //given
+        var subscriptions = new AtomicInteger();
+        Sinks.One<String> upstream = Sinks.one();
+        var call = upstream.asMono()
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        //when
+        var first = requestCoalescer.execute("abc", () -> call);
+        var second = requestCoalescer.execute("abc", () -> call);
+
+        //then
+        StepVerifier.create(first.zipWith(second))
+                .then(() -> upstream.tryEmitValue("Batman Begins"))
+                .assertNext(tuple -> {
+                    assertEquals("Batman Begins", tuple.getT1());
+                    assertEquals("Batman Begins", tuple.getT2());
+                })
+                .verifyComplete();
+        assertEquals(1, subscriptions.get());
+        assertEquals(0.5, requestCoalescer.hitRatio());
+    }
+
+    @Test
+    void execute_evictsAfterCompletionAndError() {
+        //given
+        var subscriptions = new AtomicInteger();
+        var call = Mono.fromCallable(() -> {
+            if (subscriptions.incrementAndGet() == 1) {
+                throw new RuntimeException("Service Unavailable");
+            }
+            return "Batman Begins";
+        });
+
+        //when
+        StepVerifier.create(requestCoalescer.execute("abc", () -> call))
+                .expectErrorMessage("Service Unavailable")
+                .verify();
+
+        //then
+        StepVerifier.create(requestCoalescer.execute("abc", () -> call))
+                .expectNext("Batman Begins")
+                .verifyComplete();
+        StepVerifier.create(requestCoalescer.execute("abc", () -> call))
+                .expectNext("Batman Begins")
+                .verifyComplete();
+        assertEquals(3, subscriptions.get());
+    }
+
+    @Test
+    void execute_cancelledCallerDoesNotCancelOthers() {
+        //given
+        var cancellations = new AtomicInteger();
+        Sinks.One<String> upstream = Sinks.one();
+        var call = upstream.asMono()
+                .doOnCancel(cancellations::incrementAndGet);
+
+        //when
+        var cancelled = requestCoalescer.execute("abc", () -> call).subscribe();
+        var remaining = requestCoalescer.execute("abc", () -> call);
+
+        //then
+        StepVerifier.create(remaining)
+                .then(cancelled::dispose)
+                .then(() -> upstream.tryEmitValue("Batman Begins"))
+                .expectNext("Batman Begins")
+                .verifyComplete();
+        assertEquals(0, cancellations.get());
+    }
+
+    @Test
+    void execute_lastCancelledCallerCancelsUpstream() {
+        //given
+        var subscriptions = new AtomicInteger();
+        var cancellations = new AtomicInteger();
+        Sinks.One<String> upstream = Sinks.one();
+        var call = upstream.asMono()
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet())
+                .doOnCancel(cancellations::incrementAndGet);
+        var first = requestCoalescer.execute("abc", () -> call).subscribe();
+        var second = requestCoalescer.execute("abc", () -> call).subscribe();
+
+        //when
+        first.dispose();
+        second.dispose();
+
+        //then
+        // nobody waits for it any more, the fetch stops and the next caller starts a new one
+        assertEquals(1, cancellations.get());
+        StepVerifier.create(requestCoalescer.execute("abc", () -> Mono.just("Batman Begins")))
+                .expectNext("Batman Begins")
+                .verifyComplete();
+        assertEquals(1, subscriptions.get());
+    }
+}
@@ -0,0 +1,91 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.RetryProperties;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.MoviesInfoServerException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RetryUtilTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    RetryUtil retryUtil(double ratio, int minRetries) {
+        var retryProperties = new RetryProperties();
+        retryProperties.getBudget().setRatio(ratio);
+        retryProperties.getBudget().setMinRetries(minRetries);
+        var policy = new RetryProperties.Policy();
+        policy.setMinBackoff(Duration.ofMillis(1));
+        policy.setMaxBackoff(Duration.ofMillis(10));
+        retryProperties.getPolicies().put("moviesInfo", policy);
+        return new RetryUtil(retryProperties, meterRegistry);
+    }
+
+    double retries(String result) {
+        return meterRegistry.get("movies.client.retries").tag("result", result).counter().count();
+    }
+
+    @Test
+    void retrySpec_retriesServerErrors() {
+        //given
+        var retryUtil = retryUtil(0.2, 10);
+        var attempts = new AtomicInteger();
+        var call = Mono.error(new MoviesInfoServerException("Service Unavailable"))
+                .doOnSubscribe(subscription -> attempts.incrementAndGet());
+
+        //when
+        StepVerifier.create(call.retryWhen(retryUtil.retrySpec("moviesInfo")))
+                .expectError(MoviesInfoServerException.class)
+                .verify();
+
+        //then
+        assertEquals(4, attempts.get());
+        assertEquals(3, retries("attempted"));
+    }
+
+    @Test
+    void retrySpec_doesNotRetryClientErrors() {
+        //given
+        var retryUtil = retryUtil(0.2, 10);
+        var attempts = new AtomicInteger();
+        var call = Mono.error(new MoviesInfoClientException("MovieNotFound", 404))
+                .doOnSubscribe(subscription -> attempts.incrementAndGet());
+
+        //when
+        StepVerifier.create(call.retryWhen(retryUtil.retrySpec("moviesInfo")))
+                .expectError(MoviesInfoClientException.class)
+                .verify();
+
+        //then
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void retrySpec_budgetSuppressesRetries() {
+        //given
+        var retryUtil = retryUtil(0.5, 2);
+        var attempts = new AtomicInteger();
+        var call = Mono.error(new MoviesInfoServerException("Service Unavailable"))
+                .doOnSubscribe(subscription -> attempts.incrementAndGet());
+
+        //when
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(call.retryWhen(retryUtil.retrySpec("moviesInfo")))
+                    .expectErrorMessage("Service Unavailable")
+                    .verify();
+        }
+
+        //then
+        // 2 initial tokens, and 0.5 earned by each of the 3 requests
+        assertEquals(3, retries("attempted"));
+        assertEquals(3, retries("suppressed"));
+        assertEquals(6, attempts.get());
+    }
+}